@@ -0,0 +1,163 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Precomputed card tables for a (featureSize, featureCount) deck, generated once into a binary file and then
+ * memory-mapped, so starting a game does not recompute them and all the JVMs on a host share them through the page cache.
+ * <p>
+ * Layout (little-endian): [magic 'SETC'][layout][featureSize][featureCount][deckSize][completions], then the features
+ * of every card (featureCount bytes per card), then for featureSize 3 (and decks of at most MAX_COMPLETION_CARDS) the
+ * card that completes every pair of cards to a set (a char per pair, row by row).
+ * <p>
+ * Usage: CompletionTables [featureSize] [featureCount] [file]
+ */
+public class CompletionTables {
+
+    public static final int MAGIC = 0x43544553;
+    public static final int LAYOUT = 1;
+
+    /**
+     * The largest deck for which the pair completion table is generated (3^8 cards, 86MB).
+     */
+    public static final int MAX_COMPLETION_CARDS = 6561;
+
+    private static final int HEADER = 32;
+
+    private final MappedByteBuffer tables;
+
+    public final int featureSize;
+    public final int featureCount;
+    public final int deckSize;
+    private final boolean completions;
+    private final int completionsOffset;
+
+    private CompletionTables(MappedByteBuffer tables) {
+        this.tables = tables;
+        featureSize = tables.getInt(8);
+        featureCount = tables.getInt(12);
+        deckSize = tables.getInt(16);
+        completions = tables.getInt(20) != 0;
+        completionsOffset = HEADER + deckSize * featureCount;
+    }
+
+    /**
+     * Maps the tables file of the config, generating it first if it does not exist.
+     *
+     * @throws IOException - if the file cannot be generated or mapped, or was generated for another deck.
+     */
+    public static CompletionTables load(Config config) throws IOException {
+        Path file = Paths.get(config.completionTablesFile);
+        if (!Files.exists(file))
+            generate(config.featureSize, config.featureCount, file);
+
+        CompletionTables tables = map(file);
+        if (tables.featureSize != config.featureSize || tables.featureCount != config.featureCount)
+            throw new IOException(file + " was generated for " + tables.featureCount + " features of size " + tables.featureSize);
+        return tables;
+    }
+
+    /**
+     * Maps a tables file (read only).
+     */
+    public static CompletionTables map(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            MappedByteBuffer tables = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            tables.order(ByteOrder.LITTLE_ENDIAN);
+            if (tables.capacity() < HEADER || tables.getInt(0) != MAGIC)
+                throw new IOException(file + " is not a completion tables file");
+            if (tables.getInt(4) != LAYOUT)
+                throw new IOException("unsupported completion tables layout " + tables.getInt(4));
+            return new CompletionTables(tables);
+        }
+    }
+
+    /**
+     * Generates the tables of a deck into a file (written aside and moved into place, so a concurrent start never
+     * maps a partial file).
+     */
+    public static void generate(int featureSize, int featureCount, Path file) throws IOException {
+        int deckSize = (int) Math.pow(featureSize, featureCount);
+        boolean completions = featureSize == 3 && deckSize <= MAX_COMPLETION_CARDS;
+        long size = HEADER + (long) deckSize * featureCount + (completions ? (long) deckSize * deckSize * 2 : 0);
+
+        byte[][] features = new byte[deckSize][featureCount];
+        for (int card = 0; card < deckSize; card++)
+            for (int f = featureCount - 1, rest = card; f >= 0; f--, rest /= featureSize)
+                features[card][f] = (byte) (rest % featureSize);
+
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "rw")) {
+                raf.setLength(size);
+                MappedByteBuffer tables = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                tables.order(ByteOrder.LITTLE_ENDIAN);
+                tables.putInt(0, MAGIC);
+                tables.putInt(4, LAYOUT);
+                tables.putInt(8, featureSize);
+                tables.putInt(12, featureCount);
+                tables.putInt(16, deckSize);
+                tables.putInt(20, completions ? 1 : 0);
+
+                tables.position(HEADER);
+                for (byte[] card : features)
+                    tables.put(card);
+
+                // the third card of a set has, per feature, the value that makes the sum divisible by 3
+                if (completions)
+                    for (int a = 0; a < deckSize; a++)
+                        for (int b = 0; b < deckSize; b++) {
+                            int c = 0;
+                            for (int f = 0; f < featureCount; f++)
+                                c = c * 3 + (6 - features[a][f] - features[b][f]) % 3;
+                            tables.putChar((char) c);
+                        }
+                tables.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return - the value of the feature of the card.
+     */
+    public int feature(int card, int feature) {
+        return tables.get(HEADER + card * featureCount + feature);
+    }
+
+    /**
+     * @return - true iff the pair completion table is available (see complete).
+     */
+    public boolean hasCompletions() {
+        return completions;
+    }
+
+    /**
+     * @return - the card that forms a legal set with the cards a and b (featureSize 3 only).
+     */
+    public int complete(int a, int b) {
+        return tables.getChar(completionsOffset + (a * deckSize + b) * 2);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: CompletionTables [featureSize] [featureCount] [file]");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        Path file = Paths.get(args[2]);
+        generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]), file);
+        System.out.printf("%s: %d bytes in %d ms%n", file, Files.size(file), (System.nanoTime() - start) / 1000000);
+    }
+}
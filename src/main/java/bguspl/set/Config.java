@@ -36,6 +36,16 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The rule that decides which cards form a legal set: classic, summod or onerepeat (see SetRule)
+     */
+    public final String setRule;
+
+    /**
+     * The file of the precomputed card tables, generated on first use (empty to compute everything on the fly)
+     */
+    public final String completionTablesFile;
+
     /**
      * The number of human players in the game.
      */
@@ -47,7 +57,37 @@ public class Config {
     public final int computerPlayers;
 
     /**
-     * The total number of players (human + computer) in the game
+     * The strategy of the computer players (random, seeker or human)
+     */
+    public final String computerStrategy;
+
+    /**
+     * The number of milliseconds between two key presses of a random or seeker computer player
+     */
+    public final long computerKeyDelayMillis;
+
+    /**
+     * The median number of milliseconds it takes a human-like computer player to find a set
+     */
+    public final long computerReactionMillis;
+
+    /**
+     * The number of threads that drive all the computer players
+     */
+    public final int computerThreads;
+
+    /**
+     * The number of remote players (i.e. input is received from network clients)
+     */
+    public final int remotePlayers;
+
+    /**
+     * The TCP port on which the network gateway accepts remote players
+     */
+    public final int networkPort;
+
+    /**
+     * The total number of players (human + remote + computer) in the game
      */
     public final int players;
 
@@ -56,6 +96,21 @@ public class Config {
      */
     public final boolean hints;
 
+    /**
+     * The probability that the dealer deals the new cards so that the table contains a legal set (0 deals blindly)
+     */
+    public final double dealSetProbability;
+
+    /**
+     * The number of threads that verify claims in parallel before the dealer commits them (0 verifies on the dealer)
+     */
+    public final int verifierThreads;
+
+    /**
+     * The estimated memory (in bytes) the cache of recently found sets may take (0 for no cache, see SetSearchCache)
+     */
+    public final long setCacheBytes;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -77,7 +132,8 @@ public class Config {
     public final long pointFreezeMillis;
 
     /**
-     * The number of milliseconds to delay before removing/placing a card on the table
+     * The number of milliseconds to delay before removing/placing a card on the table (for batches, the ui animates
+     * the cards this far apart instead of delaying the dealer)
      */
     public final long tableDelayMillis;
 
@@ -86,6 +142,51 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The number of bot-only games to play in tournament mode (0 runs a single interactive game)
+     */
+    public final int tournamentGames;
+
+    /**
+     * The number of games to run concurrently in tournament mode (0 uses all available cores)
+     */
+    public final int tournamentParallelism;
+
+    /**
+     * The base name of the tournament results files (.csv and .json are appended)
+     */
+    public final String tournamentResults;
+
+    /**
+     * The file to record the spectator stream to (empty for no recording)
+     */
+    public final String spectatorRecording;
+
+    /**
+     * The number of frames a spectator may fall behind before it is skipped to a keyframe
+     */
+    public final int spectatorBufferFrames;
+
+    /**
+     * The number of frames between two keyframes of the spectator stream
+     */
+    public final int spectatorKeyframeFrames;
+
+    /**
+     * The file to mirror the live game state to for local observers (empty for no mirror, see StateMirror)
+     */
+    public final String stateMirrorFile;
+
+    /**
+     * The number of milliseconds between two dumps of the runtime metrics to the log (0 for no dumps)
+     */
+    public final long metricsDumpMillis;
+
+    /**
+     * The number of latest key presses whose latency is traced (0 for no tracing)
+     */
+    public final int keyTraceBuffer;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -197,13 +298,34 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
-
-        // gameplay settings
-        humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
-        computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
-        players = humanPlayers + computerPlayers;
+        setRule = properties.getProperty("SetRule", "classic").trim().toLowerCase();
+        if (SetRule.forName(setRule) == null)
+            logger.severe("unknown set rule " + setRule + ", using classic.");
+        completionTablesFile = properties.getProperty("CompletionTablesFile", "");
+
+        // tournament settings
+        tournamentGames = Integer.parseInt(properties.getProperty("TournamentGames", "0"));
+        tournamentParallelism = Integer.parseInt(properties.getProperty("TournamentParallelism", "0"));
+        tournamentResults = properties.getProperty("TournamentResults", "tournament");
+
+        // gameplay settings (tournament games are bot-only, so every player is a computer player)
+        int human = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
+        int computer = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
+        int remote = Integer.parseInt(properties.getProperty("RemotePlayers", "0"));
+        humanPlayers = tournamentGames > 0 ? 0 : human;
+        remotePlayers = tournamentGames > 0 ? 0 : remote;
+        computerPlayers = tournamentGames > 0 ? human + remote + computer : computer;
+        players = humanPlayers + remotePlayers + computerPlayers;
+        computerStrategy = properties.getProperty("ComputerStrategy", "random").trim().toLowerCase();
+        computerKeyDelayMillis = (long) (Double.parseDouble(properties.getProperty("ComputerKeyDelaySeconds", "0.01")) * 1000.0);
+        computerReactionMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionSeconds", "2")) * 1000.0);
+        computerThreads = Integer.parseInt(properties.getProperty("ComputerThreads", "2"));
+        networkPort = Integer.parseInt(properties.getProperty("NetworkPort", "7777"));
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        dealSetProbability = Double.parseDouble(properties.getProperty("DealSetProbability", "0"));
+        verifierThreads = Integer.parseInt(properties.getProperty("VerifierThreads", "0"));
+        setCacheBytes = Long.parseLong(properties.getProperty("SetCacheKilobytes", "0")) * 1024;
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
@@ -211,6 +333,16 @@ public class Config {
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
+        // spectator settings
+        spectatorRecording = properties.getProperty("SpectatorRecording", "");
+        spectatorBufferFrames = Integer.parseInt(properties.getProperty("SpectatorBufferFrames", "1024"));
+        spectatorKeyframeFrames = Integer.parseInt(properties.getProperty("SpectatorKeyframeFrames", "512"));
+        stateMirrorFile = properties.getProperty("StateMirrorFile", "");
+
+        // metrics settings
+        metricsDumpMillis = (long) (Double.parseDouble(properties.getProperty("MetricsDumpSeconds", "0")) * 1000.0);
+        keyTraceBuffer = Integer.parseInt(properties.getProperty("KeyTraceBuffer", "0"));
+
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
         playerNames = new String[players];
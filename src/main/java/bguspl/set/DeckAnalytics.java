@@ -0,0 +1,267 @@
+package bguspl.set;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.stream.LongStream;
+
+/**
+ * An offline batch tool that estimates, by Monte Carlo simulation, how table layouts play: how many sets a freshly
+ * dealt table has (and how often none) and how many times a game has to be reshuffled because no set is left on
+ * the table. Every simulated game deals like the dealer: a shuffled deck, a full table, the cards of a taken set
+ * (chosen at random among the table's sets) replaced from the top of the deck, the table collected and the deck
+ * reshuffled when the table has no set, and the end when no set is left in the cards.
+ * <p>
+ * Games run in parallel on all cores, each worker with ThreadLocalRandom and its own histograms (merged after every
+ * batch of games), and the histograms of every layout are appended to the results file as soon as it is simulated.
+ * <p>
+ * Usage: DeckAnalytics [games] [results csv] [rows]x[columns]x[featureCount] ...
+ * (the other settings, e.g. the feature size and the set rule, are read from config.properties if there is one)
+ */
+public class DeckAnalytics {
+
+    /**
+     * The number of games simulated between two progress reports.
+     */
+    private static final long BATCH_GAMES = 100_000;
+
+    private enum Metric {
+        DEAL_SETS,        // the number of sets on a table dealt from a shuffled deck (the opening table or after a reshuffle)
+        OPENING_SETS,     // the number of sets on the opening table of a game
+        DEAD_RESHUFFLES,  // the number of reshuffles in a game because the table had no set
+        SETS_TAKEN,       // the number of sets taken in a game
+        CARDS_LEFT        // the number of cards left (on the table and in the deck) at the end of a game
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+
+    /**
+     * Histograms of small non-negative integers, one per metric.
+     */
+    private static final class Histograms {
+
+        private final long[][] counts = new long[METRICS.length][16];
+
+        void record(Metric metric, int value) {
+            long[] histogram = counts[metric.ordinal()];
+            if (value >= histogram.length)
+                counts[metric.ordinal()] = histogram = Arrays.copyOf(histogram, Math.max(value + 1, histogram.length * 2));
+            histogram[value]++;
+        }
+
+        void merge(Histograms other) {
+            for (int m = 0; m < METRICS.length; m++) {
+                if (other.counts[m].length > counts[m].length)
+                    counts[m] = Arrays.copyOf(counts[m], other.counts[m].length);
+                for (int value = 0; value < other.counts[m].length; value++)
+                    counts[m][value] += other.counts[m][value];
+            }
+        }
+
+        long total(Metric metric) {
+            return Arrays.stream(counts[metric.ordinal()]).sum();
+        }
+
+        double mean(Metric metric) {
+            long[] histogram = counts[metric.ordinal()];
+            long total = 0, sum = 0;
+            for (int value = 0; value < histogram.length; value++) {
+                total += histogram[value];
+                sum += value * histogram[value];
+            }
+            return total == 0 ? 0 : (double) sum / total;
+        }
+
+        double probability(Metric metric, int value) {
+            long total = total(metric);
+            long[] histogram = counts[metric.ordinal()];
+            return total == 0 || value >= histogram.length ? 0 : (double) histogram[value] / total;
+        }
+    }
+
+    /**
+     * The simulation state of a worker: its histograms and the deck and table it deals, reused game after game.
+     */
+    private static final class Simulation {
+
+        private final Config config;
+        private final Util util;
+        private final Histograms histograms = new Histograms();
+        private final int[] deck;
+        private final List<Integer> table;
+        private final List<Integer> remaining;
+
+        Simulation(Config config, Util util) {
+            this.config = config;
+            this.util = util;
+            deck = new int[config.deckSize];
+            table = new ArrayList<>(config.tableSize);
+            remaining = new ArrayList<>(config.deckSize);
+        }
+
+        void play() {
+            Random rand = ThreadLocalRandom.current();
+            for (int i = 0; i < deck.length; i++)
+                deck[i] = i;
+            shuffle(0, rand);
+            table.clear();
+            int top = deal(0);
+
+            boolean dealt = true, opening = true;
+            int reshuffles = 0, taken = 0;
+            while (true) {
+                List<int[]> sets = util.findSets(table, Integer.MAX_VALUE);
+                if (dealt) {
+                    histograms.record(Metric.DEAL_SETS, sets.size());
+                    if (opening) histograms.record(Metric.OPENING_SETS, sets.size());
+                    dealt = opening = false;
+                }
+
+                if (sets.isEmpty()) {
+                    remaining.clear();
+                    remaining.addAll(table);
+                    for (int i = top; i < deck.length; i++)
+                        remaining.add(deck[i]);
+                    if (!util.anySet(remaining)) break;
+
+                    // the table goes back to the deck, which is reshuffled and dealt again
+                    reshuffles++;
+                    top = deck.length - remaining.size();
+                    for (int i = 0; i < remaining.size(); i++)
+                        deck[top + i] = remaining.get(i);
+                    shuffle(top, rand);
+                    table.clear();
+                    top = deal(top);
+                    dealt = true;
+                    continue;
+                }
+
+                for (int card : sets.get(rand.nextInt(sets.size())))
+                    table.remove(Integer.valueOf(card));
+                taken++;
+                top = deal(top);
+            }
+
+            histograms.record(Metric.DEAD_RESHUFFLES, reshuffles);
+            histograms.record(Metric.SETS_TAKEN, taken);
+            histograms.record(Metric.CARDS_LEFT, table.size() + deck.length - top);
+        }
+
+        // fills the table from the top of the deck, returns the new top
+        private int deal(int top) {
+            while (table.size() < config.tableSize && top < deck.length)
+                table.add(deck[top++]);
+            return top;
+        }
+
+        private void shuffle(int from, Random rand) {
+            for (int i = deck.length - 1; i > from; i--) {
+                int j = from + rand.nextInt(i - from + 1);
+                int temp = deck[i];
+                deck[i] = deck[j];
+                deck[j] = temp;
+            }
+        }
+    }
+
+    private final Properties base;
+    private final long games;
+    private final String results;
+
+    public DeckAnalytics(Properties base, long games, String results) {
+        this.base = base;
+        this.games = games;
+        this.results = results;
+    }
+
+    /**
+     * Simulates the games of a layout and appends its histograms to the results file.
+     */
+    public void run(int rows, int columns, int featureCount) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(base);
+        properties.setProperty("Rows", Integer.toString(rows));
+        properties.setProperty("Columns", Integer.toString(columns));
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+
+        // no players take part in the simulation
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("RemotePlayers", "0");
+        Config config = new Config(Logger.getLogger("DeckAnalytics"), properties);
+        Util util = new UtilImpl(config);
+
+        String layout = rows + "x" + columns + "x" + featureCount;
+        System.out.println("Simulating " + games + " games of " + layout + " (" + config.deckSize + " cards)...");
+        long start = System.currentTimeMillis();
+        Histograms histograms = new Histograms();
+        for (long done = 0; done < games; ) {
+            long batch = Math.min(BATCH_GAMES, games - done);
+            Histograms merged = LongStream.range(0, batch).parallel().collect(
+                    () -> new Simulation(config, util), (simulation, game) -> simulation.play(),
+                    (left, right) -> left.histograms.merge(right.histograms)).histograms;
+            histograms.merge(merged);
+            done += batch;
+            System.out.printf("  %s: %d games, opening table without a set %.4f%%, dead-table reshuffles per game %.4f%n",
+                    layout, done, 100 * histograms.probability(Metric.OPENING_SETS, 0), histograms.mean(Metric.DEAD_RESHUFFLES));
+        }
+        System.out.printf("  %s done in %.1f seconds: sets per dealt table %.3f (none %.4f%%), sets taken per game %.3f, cards left %.3f%n",
+                layout, (System.currentTimeMillis() - start) / 1000.0, histograms.mean(Metric.DEAL_SETS),
+                100 * histograms.probability(Metric.DEAL_SETS, 0), histograms.mean(Metric.SETS_TAKEN), histograms.mean(Metric.CARDS_LEFT));
+
+        write(config, histograms);
+    }
+
+    private void write(Config config, Histograms histograms) throws IOException {
+        boolean header = !Files.exists(Paths.get(results));
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(results), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (header)
+                csv.println("rows,columns,featureCount,featureSize,setRule,metric,value,count,total");
+            for (Metric metric : METRICS) {
+                long[] histogram = histograms.counts[metric.ordinal()];
+                long total = histograms.total(metric);
+                for (int value = 0; value < histogram.length; value++)
+                    if (histogram[value] > 0)
+                        csv.printf("%d,%d,%d,%d,%s,%s,%d,%d,%d%n", config.rows, config.columns, config.featureCount,
+                                config.featureSize, config.setRule, metric.name().toLowerCase(), value, histogram[value], total);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: DeckAnalytics [games] [results csv] [rows]x[columns]x[featureCount] ...");
+            System.exit(1);
+        }
+
+        Properties base = new Properties();
+        if (Files.exists(Paths.get("config.properties")))
+            try (InputStream is = new FileInputStream("config.properties")) {
+                base.load(is);
+            }
+
+        DeckAnalytics analytics = new DeckAnalytics(base, Long.parseLong(args[0]), args[1]);
+        for (int i = 2; i < args.length; i++) {
+            String[] layout = args[i].toLowerCase().split("x");
+            if (layout.length != 3) {
+                System.err.println("invalid layout " + args[i] + " (expected [rows]x[columns]x[featureCount])");
+                System.exit(1);
+            }
+            analytics.run(Integer.parseInt(layout[0]), Integer.parseInt(layout[1]), Integer.parseInt(layout[2]));
+        }
+        System.out.println("Results written to " + args[1]);
+    }
+}
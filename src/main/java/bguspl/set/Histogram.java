@@ -0,0 +1,91 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values (e.g. latencies in nanoseconds) with log-linear buckets, as in
+ * HdrHistogram: every power of two is split into 8 buckets, so values are kept with a relative error below 12.5%
+ * in a fixed array of 496 counters. Recording is a few atomic increments and never allocates.
+ * <p>
+ * The counters are striped by thread (a copy per stripe, up to one per core), so threads recording on different
+ * cores, e.g. every table lock acquisition, don't contend on the same counters; reading sums the stripes.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) << SUB_BITS;
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final AtomicLongArray buckets = new AtomicLongArray(STRIPES * BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    static int index(long value) {
+        if (value < SUB) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + (int) ((value >>> (exponent - SUB_BITS)) & (SUB - 1));
+    }
+
+    // the smallest value of the bucket
+    static long lowerBound(int index) {
+        int exponent = index >> SUB_BITS;
+        if (exponent == 0) return index;
+        return (long) (SUB + (index & (SUB - 1))) << (exponent - 1);
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        buckets.incrementAndGet(stripe * BUCKETS + index(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+            current = max.get();
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile - between 0 and 100.
+     * @return - an upper bound of the value at the given percentile (within the bucket precision).
+     */
+    public long percentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < STRIPES * BUCKETS; i++)
+            counts[i % BUCKETS] += buckets.get(i);
+        for (long n : counts)
+            total += n;
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+                return Math.min(max.get(), i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE);
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p99=%d max=%d", count(), mean(), percentile(50), percentile(99), max());
+    }
+}
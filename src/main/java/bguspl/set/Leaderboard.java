@@ -0,0 +1,113 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the results of many games that finish concurrently (one row per player seat).
+ * All counters are LongAdders, so games that end at the same time never contend on a shared lock.
+ */
+public class Leaderboard {
+
+    private final Config config;
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder gameMillis = new LongAdder();
+
+    private final LongAdder[] wins;
+    private final LongAdder[] draws;
+    private final LongAdder[] points;
+    private final LongAdder[] penalties;
+    private final LongAdder[] claims;
+    private final LongAdder[] claimNanos;
+
+    public Leaderboard(Config config) {
+        this.config = config;
+        wins = newAdders(config.players);
+        draws = newAdders(config.players);
+        points = newAdders(config.players);
+        penalties = newAdders(config.players);
+        claims = newAdders(config.players);
+        claimNanos = newAdders(config.players);
+    }
+
+    private static LongAdder[] newAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    /**
+     * Records the result of one finished game.
+     *
+     * @param winners - the ids of the winning player/s.
+     * @param millis  - the duration of the game in milliseconds.
+     */
+    public void recordGame(int[] winners, long millis) {
+        games.increment();
+        gameMillis.add(millis);
+        for (int id : winners) {
+            if (winners.length == 1) wins[id].increment();
+            else draws[id].increment();
+        }
+    }
+
+    /**
+     * Records the statistics of one player in a finished game.
+     */
+    public void recordPlayer(int player, int score, int penalty, int claimCount, long claimTime) {
+        points[player].add(score);
+        penalties[player].add(penalty);
+        claims[player].add(claimCount);
+        claimNanos[player].add(claimTime);
+    }
+
+    public long games() {
+        return games.sum();
+    }
+
+    /**
+     * Writes the leaderboard to (base).csv and (base).json.
+     *
+     * @param base - the base name of the results files.
+     */
+    public void write(String base) throws IOException {
+
+        long totalGames = games.sum();
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(base + ".csv"), StandardCharsets.UTF_8))) {
+            csv.println("player,name,games,wins,draws,points,penalties,claims,avgClaimMillis,avgPointsPerGame");
+            for (int i = 0; i < config.players; i++) {
+                csv.printf("%d,%s,%d,%d,%d,%d,%d,%d,%.3f,%.3f%n", i + 1, config.playerNames[i].replace(",", " "),
+                        totalGames, wins[i].sum(), draws[i].sum(), points[i].sum(), penalties[i].sum(), claims[i].sum(),
+                        avgClaimMillis(i), totalGames == 0 ? 0.0 : (double) points[i].sum() / totalGames);
+            }
+        }
+
+        try (PrintWriter json = new PrintWriter(Files.newBufferedWriter(Paths.get(base + ".json"), StandardCharsets.UTF_8))) {
+            json.println("{");
+            json.printf("  \"games\": %d,%n", totalGames);
+            json.printf("  \"avgGameMillis\": %.3f,%n", totalGames == 0 ? 0.0 : (double) gameMillis.sum() / totalGames);
+            json.println("  \"players\": [");
+            for (int i = 0; i < config.players; i++) {
+                json.printf("    {\"player\": %d, \"name\": \"%s\", \"wins\": %d, \"draws\": %d, \"points\": %d, "
+                                + "\"penalties\": %d, \"claims\": %d, \"avgClaimMillis\": %.3f}%s%n",
+                        i + 1, config.playerNames[i].replace("\\", "\\\\").replace("\"", "\\\""),
+                        wins[i].sum(), draws[i].sum(), points[i].sum(), penalties[i].sum(), claims[i].sum(),
+                        avgClaimMillis(i), i < config.players - 1 ? "," : "");
+            }
+            json.println("  ]");
+            json.println("}");
+        }
+    }
+
+    private double avgClaimMillis(int player) {
+        long count = claims[player].sum();
+        return count == 0 ? 0.0 : claimNanos[player].sum() / 1_000_000.0 / count;
+    }
+}
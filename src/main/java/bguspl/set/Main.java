@@ -43,7 +43,27 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        Util util = new UtilImpl(config, loadCompletionTables(config));
+        if (config.setCacheBytes > 0) util = new SetSearchCache(config, util);
+
+        // runtime metrics are always collected, they are exposed through jmx and optionally dumped to the log
+        Metrics.register(logger);
+        if (config.metricsDumpMillis > 0) {
+            ThreadLogger metricsThread = new ThreadLogger(() -> Metrics.dumpEvery(logger, config.metricsDumpMillis), "metrics-dump", logger);
+            metricsThread.setDaemon(true);
+            metricsThread.startWithLog();
+        }
+
+        // tournament mode: play many headless bot-only games instead of a single interactive one
+        if (config.tournamentGames > 0) {
+            try {
+                new Tournament(logger, config, util).run();
+            } finally {
+                ThreadLogger.logStop(logger, Thread.currentThread().getName());
+                for (Handler h : logger.getHandlers()) h.flush();
+            }
+            return;
+        }
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -55,6 +75,31 @@ public class Main {
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
+
+        // remote players play through the network gateway, which also broadcasts the ui updates to them
+        NetworkGateway gateway = null;
+        if (config.remotePlayers > 0) {
+            try {
+                ui = gateway = new NetworkGateway(logger, config, players, ui);
+            } catch (IOException e) {
+                logger.severe("error creating network gateway: " + e.getMessage());
+                logger.severe("warning: running with remote players that cannot connect");
+            }
+        }
+
+        // spectators observe the game through the spectator stream
+        SpectatorStream spectators = null;
+        if (!config.spectatorRecording.isEmpty())
+            ui = spectators = new SpectatorStream(config, ui);
+
+        // local observers read the game state straight from the shared memory mirror
+        if (!config.stateMirrorFile.isEmpty()) {
+            try {
+                ui = new StateMirror(config, ui);
+            } catch (IOException e) {
+                logger.severe("error creating state mirror: " + e.getMessage());
+            }
+        }
         ui = new UserInterfaceDecorator(logger, util, ui);
 
         Env env = new Env(logger, config, ui, util);
@@ -63,7 +108,21 @@ public class Main {
         Table table = new Table(env);
         dealer = new Dealer(env, table, players);
         for (int i = 0; i < players.length; i++)
-            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers + env.config.remotePlayers);
+
+        // start the network gateway thread
+        if (gateway != null) {
+            ThreadLogger gatewayThread = new ThreadLogger(gateway, "network-gateway", logger);
+            gatewayThread.setDaemon(true);
+            gatewayThread.startWithLog();
+        }
+
+        // start the spectator recorder thread
+        if (spectators != null) {
+            ThreadLogger recorderThread = new ThreadLogger(new SpectatorRecorder(logger, spectators, config.spectatorRecording), "spectator-recorder", logger);
+            recorderThread.setDaemon(true);
+            recorderThread.startWithLog();
+        }
 
         // start the dealer thread
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
@@ -83,6 +142,20 @@ public class Main {
         }
     }
 
+    // the precomputed card tables if configured (null if not, or if they cannot be loaded)
+    private static CompletionTables loadCompletionTables(Config config) {
+        if (config.completionTablesFile.isEmpty()) return null;
+        try {
+            long start = System.nanoTime();
+            CompletionTables tables = CompletionTables.load(config);
+            logger.info("completion tables " + config.completionTablesFile + " mapped in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return tables;
+        } catch (IOException e) {
+            logger.severe("cannot load completion tables: " + e.getMessage());
+            return null;
+        }
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
@@ -0,0 +1,64 @@
+package bguspl.set;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for data shared through memory-mapped files (e.g. the state mirror's seqlock), where the java memory
+ * model's volatile semantics do not apply. The fences are VarHandle's on Java 9+ and Unsafe's on Java 8, both looked up
+ * at runtime so the sources don't depend on either; the calls are constant method handles, which the JIT inlines.
+ */
+final class MemoryFences {
+
+    private MemoryFences() {}
+
+    private static final MethodHandle STORE_FENCE;
+    private static final MethodHandle LOAD_FENCE;
+
+    static {
+        MethodHandle store, load;
+        MethodType fence = MethodType.methodType(void.class);
+        try {
+            Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+            store = MethodHandles.publicLookup().findStatic(varHandle, "releaseFence", fence);
+            load = MethodHandles.publicLookup().findStatic(varHandle, "acquireFence", fence);
+        } catch (ReflectiveOperationException e) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                Object unsafe = field.get(null);
+                store = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", fence).bindTo(unsafe);
+                load = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", fence).bindTo(unsafe);
+            } catch (ReflectiveOperationException | RuntimeException unavailable) {
+                throw new ExceptionInInitializerError("no memory fences in this runtime: " + unavailable);
+            }
+        }
+        STORE_FENCE = store;
+        LOAD_FENCE = load;
+    }
+
+    /**
+     * Orders the loads and stores before the fence before the stores after it.
+     */
+    static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Orders the loads before the fence before the loads and stores after it.
+     */
+    static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
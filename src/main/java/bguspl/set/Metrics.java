@@ -0,0 +1,140 @@
+package bguspl.set;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * The process-wide registry of the game's runtime metrics: LongAdder counters and latency histograms.
+ * Hot paths look their metrics up once (into static final fields) and then only increment or record, so the metrics
+ * are always on. The registry is exposed through JMX as bguspl.set:type=Metrics and can be dumped to the log.
+ * <p>
+ * For a histogram named h the JMX attributes are h.count, h.mean, h.p50, h.p99 and h.max.
+ */
+public class Metrics implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "bguspl.set:type=Metrics";
+
+    private static final Metrics registry = new Metrics();
+    private static boolean registered = false;
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    /**
+     * @return - the counter with the given name (created on first use).
+     */
+    public static LongAdder counter(String name) {
+        return registry.counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * @return - the histogram with the given name (created on first use).
+     */
+    public static Histogram histogram(String name) {
+        return registry.histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Registers the metrics MBean with the platform MBean server (once per process).
+     */
+    public static synchronized void register(Logger logger) {
+        if (registered) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(registry, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException e) {
+            logger.severe("cannot register metrics mbean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return - all the metrics, one per line.
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder("metrics:");
+        registry.counters.forEach((name, counter) -> sb.append(System.lineSeparator()).append(name).append(' ').append(counter.sum()));
+        registry.histograms.forEach((name, histogram) -> sb.append(System.lineSeparator()).append(name).append(' ').append(histogram));
+        return sb.toString();
+    }
+
+    /**
+     * Logs all the metrics periodically until the thread is interrupted.
+     */
+    public static void dumpEvery(Logger logger, long millis) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(millis);
+                logger.severe(dump());
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongAdder counter = counters.get(attribute);
+        if (counter != null) return counter.sum();
+
+        int dot = attribute.lastIndexOf('.');
+        Histogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+        if (histogram != null) {
+            switch (attribute.substring(dot + 1)) {
+                case "count": return histogram.count();
+                case "mean": return histogram.mean();
+                case "p50": return histogram.percentile(50);
+                case "p99": return histogram.percentile(99);
+                case "max": return histogram.max();
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignored) {}
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : counters.keySet())
+            attributes.add(new MBeanAttributeInfo(name, "long", "counter", true, false, false));
+        for (String name : histograms.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name + ".count", "long", "number of values", true, false, false));
+            attributes.add(new MBeanAttributeInfo(name + ".mean", "double", "mean value", true, false, false));
+            attributes.add(new MBeanAttributeInfo(name + ".p50", "long", "median value", true, false, false));
+            attributes.add(new MBeanAttributeInfo(name + ".p99", "long", "99th percentile value", true, false, false));
+            attributes.add(new MBeanAttributeInfo(name + ".max", "long", "maximum value", true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Set game runtime metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,463 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking TCP gateway that lets remote clients play in the remote players' seats.
+ * All the connections are served by a single selector thread. The gateway is also a user interface decorator:
+ * every update is forwarded to the wrapped user interface and broadcast to the connected clients as a delta.
+ * <p>
+ * Protocol (all numbers are big-endian, card 0xFFFF means an empty slot, slot 0xFFFF means all slots):
+ * <pre>
+ * client -> server  KEY     [0x01][slot:u16]
+ * server -> client  WELCOME [0x10][player:u16][tableSize:u16][players:u16]  followed by the current table, scores and timer
+ *                   CARD    [0x11][slot:u16][card:u16]
+ *                   TOKEN   [0x12][player:u16][slot:u16][placed:u8]
+ *                   TOKENS  [0x13][slot:u16]
+ *                   SCORE   [0x14][player:u16][score:i32]
+ *                   FREEZE  [0x15][player:u16][millies:i32]
+ *                   TIMER   [0x16][millies:i32][warn:i32]  (the countdown is a warning once at most warn millies are left, -1 never)
+ *                   ELAPSED [0x17][millies:i32]  (timers are sent when they are reset, clients keep them running)
+ *                   WINNER  [0x18][count:u16][player:u16]...
+ *                   FULL    [0x1F]  (no free remote seat, the connection is closed)
+ * </pre>
+ */
+public class NetworkGateway implements UserInterface, Runnable {
+
+    public static final byte KEY = 0x01;
+    public static final byte WELCOME = 0x10;
+    public static final byte CARD = 0x11;
+    public static final byte TOKEN = 0x12;
+    public static final byte TOKENS = 0x13;
+    public static final byte SCORE = 0x14;
+    public static final byte FREEZE = 0x15;
+    public static final byte TIMER = 0x16;
+    public static final byte ELAPSED = 0x17;
+    public static final byte WINNER = 0x18;
+    public static final byte FULL = 0x1F;
+
+    public static final int NONE = 0xFFFF;
+
+    /**
+     * The number of pending bytes a client may fall behind before it is disconnected.
+     */
+    private static final int OUT_BUFFER_SIZE = 64 * 1024;
+
+    private final Logger logger;
+    private final Config config;
+    private final Player[] players;
+    private final UserInterface ui;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    /**
+     * Encoded updates waiting to be broadcast by the selector thread.
+     */
+    private final Queue<byte[]> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private volatile boolean terminate;
+
+    /**
+     * Selector thread state: the connections, the remote seats and a mirror of the table for joining clients.
+     */
+    private final List<Connection> connections = new ArrayList<>();
+    private final Connection[] seats;
+    private final int[] slotToCard;
+    private final boolean[][] tokens;
+    private final int[] scores;
+    private byte timerType;   // TIMER or ELAPSED, 0 before the first timer
+    private long timerAt;     // the deadline of a countdown or the origin of an elapsed timer (epoch millis)
+    private int timerWarn;
+
+    private static class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(256);
+        final ByteBuffer out = ByteBuffer.allocate(OUT_BUFFER_SIZE);
+        SelectionKey key;
+        int seat = -1;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public NetworkGateway(Logger logger, Config config, Player[] players, UserInterface ui) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        this.ui = ui;
+
+        seats = new Connection[config.remotePlayers];
+        slotToCard = new int[config.tableSize];
+        Arrays.fill(slotToCard, NONE);
+        tokens = new boolean[config.players][config.tableSize];
+        scores = new int[config.players];
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(config.networkPort));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        logger.severe("network gateway listening on port " + port());
+    }
+
+    /**
+     * @return - the port the gateway is listening on.
+     */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * The selector thread starts here.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!terminate) {
+                selector.select();
+                wakeupPending.set(false);
+                broadcastPending();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) read(connection);
+                        if (key.isValid() && key.isWritable()) flush(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("network gateway failed: " + e.getMessage());
+        } finally {
+            broadcastPending(); // best effort, e.g. the winner announcement
+            for (Connection connection : new ArrayList<>(connections))
+                close(connection);
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        Connection connection = new Connection(channel);
+        int seat = 0;
+        while (seat < seats.length && seats[seat] != null) seat++;
+        if (seat == seats.length) {
+            logger.severe("network gateway rejected " + channel.getRemoteAddress() + ": no free remote seat");
+            channel.write(ByteBuffer.wrap(new byte[]{FULL}));
+            channel.close();
+            return;
+        }
+
+        connection.seat = seat;
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        seats[seat] = connection;
+        connections.add(connection);
+        int player = config.humanPlayers + seat;
+        logger.severe("network gateway seated " + channel.getRemoteAddress() + " as player " + (player + 1));
+
+        // welcome the client and send it the current state
+        enqueue(connection, message(7, WELCOME).putShort((short) player).putShort((short) config.tableSize).putShort((short) config.players).array());
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] != NONE)
+                enqueue(connection, message(5, CARD).putShort((short) slot).putShort((short) slotToCard[slot]).array());
+        for (int p = 0; p < tokens.length; p++)
+            for (int slot = 0; slot < tokens[p].length; slot++)
+                if (tokens[p][slot])
+                    enqueue(connection, message(6, TOKEN).putShort((short) p).putShort((short) slot).put((byte) 1).array());
+        for (int p = 0; p < scores.length; p++)
+            enqueue(connection, message(7, SCORE).putShort((short) p).putInt(scores[p]).array());
+        if (timerType == TIMER)
+            enqueue(connection, message(9, TIMER).putInt((int) Math.max(0, timerAt - System.currentTimeMillis())).putInt(timerWarn).array());
+        else if (timerType == ELAPSED)
+            enqueue(connection, message(5, ELAPSED).putInt((int) (System.currentTimeMillis() - timerAt)).array());
+        flush(connection);
+    }
+
+    private void read(Connection connection) {
+        int read;
+        try {
+            read = connection.channel.read(connection.in);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 3) {
+            byte type = in.get();
+            int slot = in.getShort() & 0xFFFF;
+            if (type != KEY || slot >= config.tableSize) {
+                logger.severe("network gateway dropped player " + (config.humanPlayers + connection.seat + 1) + ": protocol error");
+                close(connection);
+                return;
+            }
+            players[config.humanPlayers + connection.seat].keyPressed(slot);
+        }
+        in.compact();
+    }
+
+    /**
+     * Applies the pending updates to the mirror and appends them to every client's output buffer.
+     */
+    private void broadcastPending() {
+        if (outbound.isEmpty()) return;
+        byte[] message;
+        while ((message = outbound.poll()) != null) {
+            apply(message);
+            for (int i = connections.size() - 1; i >= 0; i--)
+                enqueue(connections.get(i), message);
+        }
+        for (int i = connections.size() - 1; i >= 0; i--)
+            flush(connections.get(i));
+    }
+
+    private void apply(byte[] message) {
+        ByteBuffer buffer = ByteBuffer.wrap(message, 1, message.length - 1);
+        switch (message[0]) {
+            case CARD:
+                int slot = buffer.getShort() & 0xFFFF;
+                slotToCard[slot] = buffer.getShort() & 0xFFFF;
+                if (slotToCard[slot] == NONE)
+                    for (boolean[] playerTokens : tokens) playerTokens[slot] = false;
+                break;
+            case TOKEN:
+                int player = buffer.getShort() & 0xFFFF;
+                tokens[player][buffer.getShort() & 0xFFFF] = buffer.get() != 0;
+                break;
+            case TOKENS:
+                int cleared = buffer.getShort() & 0xFFFF;
+                for (boolean[] playerTokens : tokens)
+                    if (cleared == NONE) Arrays.fill(playerTokens, false);
+                    else playerTokens[cleared] = false;
+                break;
+            case SCORE:
+                scores[buffer.getShort() & 0xFFFF] = buffer.getInt();
+                break;
+            case TIMER:
+                timerType = TIMER;
+                timerAt = System.currentTimeMillis() + buffer.getInt();
+                timerWarn = buffer.getInt();
+                break;
+            case ELAPSED:
+                timerType = ELAPSED;
+                timerAt = System.currentTimeMillis() - buffer.getInt();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void enqueue(Connection connection, byte[] message) {
+        if (!connection.channel.isOpen()) return;
+        if (connection.out.remaining() < message.length) {
+            logger.severe("network gateway dropped player " + (config.humanPlayers + connection.seat + 1) + ": client too slow");
+            close(connection);
+            return;
+        }
+        connection.out.put(message);
+    }
+
+    private void flush(Connection connection) {
+        if (!connection.channel.isOpen()) return;
+        ByteBuffer out = connection.out;
+        try {
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+            connection.key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.key != null) connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {}
+        connections.remove(connection);
+        if (connection.seat >= 0 && seats[connection.seat] == connection) {
+            seats[connection.seat] = null;
+            logger.severe("network gateway freed the seat of player " + (config.humanPlayers + connection.seat + 1));
+        }
+    }
+
+    private static ByteBuffer message(int size, byte type) {
+        return ByteBuffer.allocate(size).put(type);
+    }
+
+    /**
+     * Queues a message to all the clients without blocking the calling (game) thread.
+     */
+    private void publish(byte[] message) {
+        outbound.add(message);
+        if (wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    /**
+     * Returns the length of the server message at the buffer's position, or -1 if it is not complete yet.
+     * Meant for clients that parse the stream.
+     *
+     * @param buffer - a buffer in read mode (its position is not changed).
+     */
+    public static int messageLength(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) return -1;
+        int length;
+        switch (buffer.get(buffer.position())) {
+            case WELCOME: length = 7; break;
+            case CARD: length = 5; break;
+            case TOKEN: length = 6; break;
+            case TOKENS: length = 3; break;
+            case SCORE: length = 7; break;
+            case FREEZE: length = 7; break;
+            case TIMER: length = 9; break;
+            case ELAPSED: length = 5; break;
+            case FULL: length = 1; break;
+            case WINNER:
+                if (buffer.remaining() < 3) return -1;
+                length = 3 + 2 * (buffer.getShort(buffer.position() + 1) & 0xFFFF);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown message type " + buffer.get(buffer.position()));
+        }
+        return buffer.remaining() < length ? -1 : length;
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        if (ui != null) ui.placeCard(card, slot);
+        publish(message(5, CARD).putShort((short) slot).putShort((short) card).array());
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        if (ui != null) ui.removeCard(slot);
+        publish(message(5, CARD).putShort((short) slot).putShort((short) NONE).array());
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        if (ui != null) ui.placeCards(cards, slots);
+        for (int i = 0; i < slots.length; i++)
+            publish(message(5, CARD).putShort((short) slots[i]).putShort((short) cards[i]).array());
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        if (ui != null) ui.removeCards(slots);
+        for (int slot : slots)
+            publish(message(5, CARD).putShort((short) slot).putShort((short) NONE).array());
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        if (ui != null) ui.placeToken(player, slot);
+        publish(message(6, TOKEN).putShort((short) player).putShort((short) slot).put((byte) 1).array());
+    }
+
+    @Override
+    public void removeTokens() {
+        if (ui != null) ui.removeTokens();
+        publish(message(3, TOKENS).putShort((short) NONE).array());
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        if (ui != null) ui.removeTokens(slot);
+        publish(message(3, TOKENS).putShort((short) slot).array());
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        if (ui != null) ui.removeToken(player, slot);
+        publish(message(6, TOKEN).putShort((short) player).putShort((short) slot).put((byte) 0).array());
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        if (ui != null) ui.setCountdown(millies, warn);
+        publish(message(9, TIMER).putInt((int) millies).putInt(warn ? (int) millies : -1).array());
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        if (ui != null) ui.setElapsed(millies);
+        publish(message(5, ELAPSED).putInt((int) millies).array());
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        if (ui != null) ui.setCountdownDeadline(deadline, warnMillies);
+        long millies = Math.max(0, deadline - System.currentTimeMillis());
+        publish(message(9, TIMER).putInt((int) millies).putInt((int) warnMillies).array());
+    }
+
+    @Override
+    public void setElapsedOrigin(long origin) {
+        if (ui != null) ui.setElapsedOrigin(origin);
+        publish(message(5, ELAPSED).putInt((int) (System.currentTimeMillis() - origin)).array());
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        if (ui != null) ui.setFreeze(player, millies);
+        publish(message(7, FREEZE).putShort((short) player).putInt((int) millies).array());
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        if (ui != null) ui.setScore(player, score);
+        publish(message(7, SCORE).putShort((short) player).putInt(score).array());
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        if (ui != null) ui.announceWinner(players);
+        ByteBuffer message = message(3 + 2 * players.length, WINNER).putShort((short) players.length);
+        for (int player : players) message.putShort((short) player);
+        publish(message.array());
+    }
+
+    @Override
+    public void dispose() {
+        if (ui != null) ui.dispose();
+        terminate = true;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,151 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A load generator for the network gateway. Opens many client connections from a single selector thread and sends
+ * random key presses at a fixed total rate, while counting the updates received from the server.
+ * <p>
+ * Usage: NetworkLoadGenerator [host] [port] [connections] [keys per second] [seconds]
+ */
+public class NetworkLoadGenerator {
+
+    private static final long TICK_MILLIS = 10;
+
+    private static class Client {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        int player = -1;
+        int tableSize;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final Selector selector;
+    private final List<Client> clients = new ArrayList<>();
+    private final int keysPerSecond;
+
+    private long keysSent;
+    private long messagesReceived;
+    private long bytesReceived;
+    private int rejected;
+
+    public NetworkLoadGenerator(String host, int port, int connections, int keysPerSecond) throws IOException {
+        this.keysPerSecond = keysPerSecond;
+        selector = Selector.open();
+        for (int i = 0; i < connections; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(new InetSocketAddress(host, port));
+            Client client = new Client(channel);
+            channel.register(selector, SelectionKey.OP_CONNECT, client);
+            clients.add(client);
+        }
+    }
+
+    /**
+     * Runs the load for the given duration and prints the statistics.
+     */
+    public void run(long millis) throws IOException {
+        long start = System.currentTimeMillis();
+        long end = start + millis;
+        long nextTick = start;
+        double credit = 0;
+        ByteBuffer key = ByteBuffer.allocate(3);
+
+        while (System.currentTimeMillis() < end) {
+            selector.select(Math.max(1, nextTick - System.currentTimeMillis()));
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey selected = it.next();
+                it.remove();
+                Client client = (Client) selected.attachment();
+                if (!selected.isValid()) continue;
+                if (selected.isConnectable()) {
+                    try {
+                        client.channel.finishConnect();
+                        selected.interestOps(SelectionKey.OP_READ);
+                    } catch (IOException e) {
+                        selected.cancel();
+                        client.channel.close();
+                    }
+                } else if (selected.isReadable()) read(selected, client);
+            }
+
+            // send the key presses of this tick to random seated clients
+            long now = System.currentTimeMillis();
+            if (now >= nextTick) {
+                credit += keysPerSecond * (double) (now - nextTick + TICK_MILLIS) / 1000.0;
+                nextTick = now + TICK_MILLIS;
+                for (; credit >= 1; credit--) {
+                    Client client = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+                    if (client.player < 0 || !client.channel.isOpen()) continue;
+                    key.clear();
+                    key.put(NetworkGateway.KEY).putShort((short) ThreadLocalRandom.current().nextInt(client.tableSize)).flip();
+                    if (client.channel.write(key) == 3) keysSent++;
+                }
+            }
+        }
+
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        int seated = 0;
+        for (Client client : clients) {
+            if (client.player >= 0 && client.channel.isOpen()) seated++;
+            client.channel.close();
+        }
+        selector.close();
+
+        System.out.printf("connections: %d seated, %d rejected%n", seated, rejected);
+        System.out.printf("keys sent: %d (%.1f/s)%n", keysSent, keysSent / seconds);
+        System.out.printf("updates received: %d (%.1f/s, %.1f KB/s)%n", messagesReceived, messagesReceived / seconds, bytesReceived / 1024.0 / seconds);
+    }
+
+    private void read(SelectionKey selected, Client client) throws IOException {
+        int read = client.channel.read(client.in);
+        if (read < 0) {
+            selected.cancel();
+            client.channel.close();
+            return;
+        }
+        bytesReceived += read;
+
+        ByteBuffer in = client.in;
+        in.flip();
+        int length;
+        while ((length = NetworkGateway.messageLength(in)) > 0) {
+            byte type = in.get(in.position());
+            if (type == NetworkGateway.WELCOME) {
+                client.player = in.getShort(in.position() + 1);
+                client.tableSize = in.getShort(in.position() + 3);
+            } else if (type == NetworkGateway.FULL) rejected++;
+            in.position(in.position() + length);
+            messagesReceived++;
+        }
+        in.compact();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int keysPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        long seconds = args.length > 4 ? Long.parseLong(args[4]) : 10;
+
+        System.out.println("Connecting " + connections + " clients to " + host + ":" + port + "...");
+        new NetworkLoadGenerator(host, port, connections, keysPerSecond).run(seconds * 1000);
+    }
+}
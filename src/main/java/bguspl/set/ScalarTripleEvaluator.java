@@ -0,0 +1,24 @@
+package bguspl.set;
+
+/**
+ * The portable (Java 8) triple evaluator, one candidate at a time.
+ */
+public class ScalarTripleEvaluator implements TripleEvaluator {
+
+    @Override
+    public int evaluate(byte[][] columns, int a, int b, int from, int to, int[] out, byte[] need) {
+        int features = columns.length;
+        for (int f = 0; f < features; f++)
+            need[f] = (byte) ((6 - columns[f][a] - columns[f][b]) % 3);
+
+        int found = 0;
+        for (int c = from; c < to; c++) {
+            int f = 0;
+            while (f < features && columns[f][c] == need[f])
+                f++;
+            if (f == features)
+                out[found++] = c;
+        }
+        return found;
+    }
+}
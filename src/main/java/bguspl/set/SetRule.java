@@ -0,0 +1,68 @@
+package bguspl.set;
+
+/**
+ * A rule of the game variant that decides which cards form a legal set, one feature at a time: the cards form a
+ * legal set iff the rule accepts the histogram of the values of every feature. Rules are compiled into lookup tables
+ * (see SetRuleTable), so they are only evaluated once per histogram.
+ */
+@FunctionalInterface
+public interface SetRule {
+
+    /**
+     * @param histogram - the number of cards that have each value of the feature (featureSize entries).
+     * @param cards     - the number of cards (the sum of the histogram).
+     * @return - true iff the values of the feature are legal in a set.
+     */
+    boolean legal(int[] histogram, int cards);
+
+    /**
+     * The values are all the same or all different (the classic game).
+     */
+    SetRule CLASSIC = (histogram, cards) -> {
+        int distinct = 0;
+        for (int count : histogram)
+            if (count > 0) distinct++;
+        return distinct == 1 || distinct == cards;
+    };
+
+    /**
+     * The sum of the values is divisible by the number of values (the same as classic for three values).
+     */
+    SetRule SUM_MOD = (histogram, cards) -> {
+        int sum = 0;
+        for (int value = 0; value < histogram.length; value++)
+            sum += value * histogram[value];
+        return sum % histogram.length == 0;
+    };
+
+    /**
+     * The values are all the same, or all different except for one value that two of the cards share
+     * (any three values qualify, so this variant is meant for four values or more).
+     */
+    SetRule ONE_REPEAT = (histogram, cards) -> {
+        int repeats = 0;
+        for (int count : histogram) {
+            if (count == cards) return true;
+            if (count > 2) return false;
+            if (count == 2) repeats++;
+        }
+        return repeats <= 1;
+    };
+
+    /**
+     * @param name - classic, summod or onerepeat.
+     * @return - the rule with the given name, or null if there is none.
+     */
+    static SetRule forName(String name) {
+        switch (name) {
+            case "classic":
+                return CLASSIC;
+            case "summod":
+                return SUM_MOD;
+            case "onerepeat":
+                return ONE_REPEAT;
+            default:
+                return null;
+        }
+    }
+}
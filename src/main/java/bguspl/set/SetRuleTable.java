@@ -0,0 +1,210 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * A set rule compiled for a deck: the histogram of a feature over the cards of a set is packed into one integer (the
+ * count of every value is a digit in base setSize + 1, so each card adds the weight of its value), and the rule's
+ * verdict for every such histogram is kept in a table. Testing a set is then setSize x featureCount additions and
+ * featureCount table lookups, for any featureSize. A second table keeps, for every histogram of one card less than
+ * a set, the smallest value that completes it.
+ * <p>
+ * Decks whose tables would be too large are tested by evaluating the rule on every histogram instead.
+ */
+public class SetRuleTable {
+
+    /**
+     * The largest number of entries of a histogram table, and of the per-card weights table.
+     */
+    private static final int MAX_TABLE = 1 << 24;
+
+    private final SetRule rule;
+    private final int featureSize;
+    private final int featureCount;
+    private final int setSize;
+    private final int[] powers;       // the weight of a feature in a card id
+    private final int[] weights;      // the weight of a value in a histogram key
+    private final int[] cardWeights;  // the weight of the value of every feature of every card, or null
+    private final boolean[] legal;    // the verdict for every histogram of setSize cards, or null
+    private final byte[] completions; // the completing value for every histogram of setSize - 1 cards (-1 for none)
+
+    public SetRuleTable(SetRule rule, Config config) {
+        this.rule = rule;
+        featureSize = config.featureSize;
+        featureCount = config.featureCount;
+        setSize = config.featureSize;
+
+        powers = new int[featureCount];
+        for (int f = featureCount - 1, power = 1; f >= 0; f--, power *= featureSize)
+            powers[f] = power;
+
+        int base = setSize + 1;
+        weights = new int[featureSize];
+        for (int value = 0, weight = 1; value < featureSize; value++, weight *= base)
+            weights[value] = weight;
+
+        long keys = (long) Math.pow(base, featureSize);
+        if (keys > MAX_TABLE || (long) config.deckSize * featureCount > MAX_TABLE) {
+            cardWeights = null;
+            legal = null;
+            completions = null;
+            return;
+        }
+
+        cardWeights = new int[config.deckSize * featureCount];
+        for (int card = 0; card < config.deckSize; card++)
+            for (int f = 0; f < featureCount; f++)
+                cardWeights[card * featureCount + f] = weights[value(card, f)];
+
+        legal = new boolean[(int) keys];
+        completions = new byte[(int) keys];
+        int[] histogram = new int[featureSize];
+        for (int key = 0; key < keys; key++) {
+            int cards = 0;
+            for (int value = 0, rest = key; value < featureSize; value++, rest /= base)
+                cards += histogram[value] = rest % base;
+
+            if (cards == setSize)
+                legal[key] = rule.legal(histogram, cards);
+            completions[key] = -1;
+        }
+        for (int key = 0; key < keys; key++)
+            if (legal[key])
+                for (int value = 0; value < featureSize; value++)
+                    if (key / weights[value] % base > 0) {
+                        int partial = key - weights[value];
+                        if (completions[partial] < 0 || completions[partial] > value)
+                            completions[partial] = (byte) value;
+                    }
+    }
+
+    private int value(int card, int feature) {
+        return card / powers[feature] % featureSize;
+    }
+
+    /**
+     * @return - true iff the cards form a legal set.
+     */
+    public boolean test(int[] cards) {
+        if (legal == null || cards.length != setSize)
+            return testByRule(cards);
+
+        for (int f = 0; f < featureCount; f++) {
+            int key = 0;
+            for (int card : cards)
+                key += cardWeights[card * featureCount + f];
+            if (!legal[key]) return false;
+        }
+        return true;
+    }
+
+    private boolean testByRule(int[] cards) {
+        int[] histogram = new int[featureSize];
+        for (int f = 0; f < featureCount; f++) {
+            Arrays.fill(histogram, 0);
+            for (int card : cards)
+                histogram[value(card, f)]++;
+            if (!rule.legal(histogram, cards.length)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param cards - one card less than a set.
+     * @return - the smallest card, other than the given cards, that forms a legal set with them, or -1 if there is none.
+     */
+    public int complete(int[] cards) {
+        if (cards.length != setSize - 1) return -1;
+
+        // the smallest completing value of every feature makes the smallest completion, unless it is one of the cards
+        // (only possible under rules that allow repeated values)
+        int completion = 0;
+        int[] histogram = legal == null ? new int[featureSize] : null;
+        for (int f = 0; f < featureCount; f++) {
+            int value;
+            if (legal != null) {
+                int key = 0;
+                for (int card : cards)
+                    key += cardWeights[card * featureCount + f];
+                value = completions[key];
+            } else {
+                value = completeByRule(cards, f, histogram);
+            }
+            if (value < 0) return -1;
+            completion += value * powers[f];
+        }
+        return contains(cards, completion) ? completeAvoiding(cards) : completion;
+    }
+
+    private int completeByRule(int[] cards, int feature, int[] histogram) {
+        Arrays.fill(histogram, 0);
+        for (int card : cards)
+            histogram[value(card, feature)]++;
+        for (int value = 0; value < featureSize; value++) {
+            histogram[value]++;
+            boolean legal = rule.legal(histogram, setSize);
+            histogram[value]--;
+            if (legal) return value;
+        }
+        return -1;
+    }
+
+    // the smallest completion that is not one of the cards, from all the completing values of every feature
+    private int completeAvoiding(int[] cards) {
+        boolean[][] values = new boolean[featureCount][featureSize];
+        int[] histogram = new int[featureSize];
+        for (int f = 0; f < featureCount; f++) {
+            int key = 0;
+            Arrays.fill(histogram, 0);
+            for (int card : cards) {
+                int value = value(card, f);
+                histogram[value]++;
+                key += weights[value];
+            }
+            for (int value = 0; value < featureSize; value++) {
+                histogram[value]++;
+                values[f][value] = legal != null ? legal[key + weights[value]] : rule.legal(histogram, setSize);
+                histogram[value]--;
+            }
+        }
+        return smallestCompletion(cards, values, 0, 0);
+    }
+
+    // the completions are visited in increasing order (the first feature is the most significant), and at most
+    // cards.length of them are skipped
+    private int smallestCompletion(int[] cards, boolean[][] values, int feature, int prefix) {
+        if (feature == featureCount)
+            return contains(cards, prefix) ? -1 : prefix;
+        for (int value = 0; value < featureSize; value++)
+            if (values[feature][value]) {
+                int completion = smallestCompletion(cards, values, feature + 1, prefix + value * powers[feature]);
+                if (completion >= 0) return completion;
+            }
+        return -1;
+    }
+
+    private static boolean contains(int[] cards, int card) {
+        for (int c : cards)
+            if (c == card) return true;
+        return false;
+    }
+
+    /**
+     * @return - true iff this rule accepts exactly the same sets as the other rule.
+     */
+    public boolean sameAs(SetRule other) {
+        if (rule == other) return true;
+        if (legal == null) return false;
+
+        int base = setSize + 1;
+        int[] histogram = new int[featureSize];
+        for (int key = 0; key < legal.length; key++) {
+            int cards = 0;
+            for (int value = 0, rest = key; value < featureSize; value++, rest /= base)
+                cards += histogram[value] = rest % base;
+            if (cards == setSize && legal[key] != other.legal(histogram, cards))
+                return false;
+        }
+        return true;
+    }
+}
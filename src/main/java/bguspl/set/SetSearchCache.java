@@ -0,0 +1,212 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+/**
+ * A Util decorator that remembers the sets found in recent collections of cards, so searching a table layout that
+ * was already searched (by the seekers, the hints, after a rejected claim or a reshuffle that deals the same cards
+ * again) costs a lookup. Collections are keyed by the bitset of their cards, regardless of their order.
+ * <p>
+ * Lookups are lock-free; insertions are serialized and evict entries in clock order (an entry that was hit since the
+ * clock hand last passed it gets a second chance) until the estimated size of the cache is within its memory cap.
+ * The lists returned are read-only and share their arrays with the cache.
+ */
+public class SetSearchCache implements Util {
+
+    private static final LongAdder hits = Metrics.counter("setCache.hits");
+    private static final LongAdder misses = Metrics.counter("setCache.misses");
+    private static final LongAdder evictions = Metrics.counter("setCache.evictions");
+
+    private final Util util;
+    private final int setSize;
+    private final int deckSize;
+    private final long capacityBytes;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final List<Key> clock = new ArrayList<>();
+    private int hand = 0;
+    private long sizeBytes = 0;
+
+    /**
+     * The cards of a collection, as a bitset.
+     */
+    private static final class Key {
+
+        private final long[] words;
+        private final int hash;
+
+        Key(List<Integer> deck, int deckSize) {
+            words = new long[(deckSize + 63) >>> 6];
+            for (int card : deck)
+                words[card >>> 6] |= 1L << card;
+            hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && hash == ((Key) other).hash && Arrays.equals(words, ((Key) other).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The sets found in a collection, all of them (complete) or the first ones only.
+     */
+    private static final class Entry {
+
+        private final List<int[]> sets;
+        private final boolean complete;
+        private final long bytes;
+        private volatile boolean referenced = false;
+
+        Entry(List<int[]> sets, boolean complete, long bytes) {
+            this.sets = sets;
+            this.complete = complete;
+            this.bytes = bytes;
+        }
+
+        // whether the entry answers a query for count sets
+        boolean covers(int count) {
+            return complete || sets.size() >= count;
+        }
+    }
+
+    /**
+     * @param util - the utilities to search with on a miss.
+     */
+    public SetSearchCache(Config config, Util util) {
+        this.util = util;
+        this.setSize = config.featureSize;
+        this.deckSize = config.deckSize;
+        this.capacityBytes = config.setCacheBytes;
+    }
+
+    private Entry lookup(Key key, int count) {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.covers(count)) {
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) entry.referenced = true;
+        hits.increment();
+        return entry;
+    }
+
+    private Entry store(Key key, List<int[]> sets, int count) {
+        long bytes = 64 + key.words.length * 8L + sets.size() * (32L + 4L * setSize);
+        Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(sets)), sets.size() < count, bytes);
+        if (bytes > capacityBytes) return entry;
+
+        synchronized (clock) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null)
+                sizeBytes -= previous.bytes;
+            else
+                clock.add(key);
+            sizeBytes += bytes;
+
+            while (sizeBytes > capacityBytes) {
+                if (hand >= clock.size()) hand = 0;
+                Key candidate = clock.get(hand);
+                Entry victim = entries.get(candidate);
+                if (victim == entry || victim.referenced) {
+                    victim.referenced = false;
+                    hand++;
+                    continue;
+                }
+                entries.remove(candidate);
+                sizeBytes -= victim.bytes;
+                clock.set(hand, clock.get(clock.size() - 1));
+                clock.remove(clock.size() - 1);
+                evictions.increment();
+            }
+        }
+        return entry;
+    }
+
+    // the entry of all the sets of the deck, searched and stored on a miss
+    private Entry allSets(List<Integer> deck) {
+        Key key = new Key(deck, deckSize);
+        Entry entry = lookup(key, Integer.MAX_VALUE);
+        return entry != null ? entry : store(key, util.findSets(deck, Integer.MAX_VALUE), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<int[]> findSets(List<Integer> deck, int count) {
+        Key key = new Key(deck, deckSize);
+        Entry entry = lookup(key, count);
+        if (entry == null)
+            entry = store(key, util.findSets(deck, count), count);
+        return entry.sets.size() > count ? entry.sets.subList(0, count) : entry.sets;
+    }
+
+    @Override
+    public int visitSets(List<Integer> deck, SetVisitor visitor) {
+
+        // the visitor gets a copy, as the arrays are shared with the cache
+        int visited = 0;
+        int[] copy = new int[setSize];
+        for (int[] set : allSets(deck).sets) {
+            System.arraycopy(set, 0, copy, 0, setSize);
+            visited++;
+            if (!visitor.visit(copy)) break;
+        }
+        return visited;
+    }
+
+    @Override
+    public int countSets(List<Integer> deck) {
+        return allSets(deck).sets.size();
+    }
+
+    @Override
+    public boolean anySet(List<Integer> deck) {
+        return !findSets(deck, 1).isEmpty();
+    }
+
+    @Override
+    public int[] cardToFeatures(int card) {
+        return util.cardToFeatures(card);
+    }
+
+    @Override
+    public int[][] cardsToFeatures(int[] cards) {
+        return util.cardsToFeatures(cards);
+    }
+
+    @Override
+    public boolean testSet(int[] cards) {
+        return util.testSet(cards);
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        return util.completeSet(cards);
+    }
+
+    @Override
+    public LongStream streamSets(List<Integer> deck) {
+        return util.streamSets(deck);
+    }
+
+    @Override
+    public int[] unpackSet(long set) {
+        return util.unpackSet(set);
+    }
+
+    @Override
+    public void spin() {
+        util.spin();
+    }
+}
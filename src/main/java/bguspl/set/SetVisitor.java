@@ -0,0 +1,16 @@
+package bguspl.set;
+
+/**
+ * A callback for the sets found by Util.visitSets.
+ */
+@FunctionalInterface
+public interface SetVisitor {
+
+    /**
+     * Called for every set found.
+     *
+     * @param set - the card ids of the set, sorted (the array is reused for the next set, copy it to keep it).
+     * @return - true to continue the search, false to stop it.
+     */
+    boolean visit(int[] set);
+}
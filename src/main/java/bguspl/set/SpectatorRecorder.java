@@ -0,0 +1,46 @@
+package bguspl.set;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+/**
+ * A spectator that records the frames of a spectator stream to a file (see SpectatorStream for the format).
+ * Runs on its own thread, so a slow disk only makes it skip to the next keyframe and never delays the game.
+ */
+public class SpectatorRecorder implements Runnable {
+
+    private final Logger logger;
+    private final SpectatorStream.Subscription subscription;
+    private final String filename;
+
+    public SpectatorRecorder(Logger logger, SpectatorStream stream, String filename) {
+        this.logger = logger;
+        this.subscription = stream.subscribe();
+        this.filename = filename;
+    }
+
+    @Override
+    public void run() {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(filename)))) {
+            byte[] frame;
+            while ((frame = subscription.take()) != null) {
+                out.write(frame);
+
+                // write whatever is already waiting before flushing
+                while ((frame = subscription.poll()) != null)
+                    out.write(frame);
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.severe("cannot record spectator stream to " + filename + ": " + e.getMessage());
+        } catch (InterruptedException ignored) {
+        } finally {
+            subscription.close();
+            logger.severe("spectator recording stopped (" + subscription.coalesced() + " frames coalesced)");
+        }
+    }
+}
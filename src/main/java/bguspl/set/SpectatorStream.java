@@ -0,0 +1,384 @@
+package bguspl.set;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A user interface decorator that publishes the game as a stream of compact binary frames to any number of
+ * subscribers (recorders, overlays etc.), in addition to forwarding every update to the wrapped user interface.
+ * <p>
+ * Publishing never waits for a subscriber: every subscriber has a bounded queue, consecutive timer updates are
+ * coalesced, and a subscriber that falls behind has its queue dropped and receives a fresh keyframe instead.
+ * Keyframes are also sent to everyone every config.spectatorKeyframeFrames deltas, and first to every new subscriber.
+ * <p>
+ * Frames (all numbers are big-endian, card 0xFFFF means an empty slot):
+ * <pre>
+ * KEYFRAME [0x20][tableSize:u16][players:u16][words:u8][timerMode:u8][timer:i64][warn:i64]
+ *          then per slot [card:u16][tokens:i64 x words], then per player [score:i32][freeze:i64]
+ * SLOT     [0x21][slot:u16][card:u16]
+ * TOKENS   [0x22][slot:u16][words:u8][tokens:i64 x words]   (bit p is set iff player p has a token on the slot)
+ * SCORE    [0x23][player:u16][score:i32]
+ * FREEZE   [0x24][player:u16][millies:i64]
+ * TIMER    [0x25][mode:u8][millies:i64][warn:i64]   (mode: 0 countdown, 1 countdown warning, 2 elapsed; the timer
+ *          keeps running from the time the frame was received until the next TIMER frame, and a countdown turns into
+ *          a warning once at most warn millies are left, -1 for never)
+ * WINNER   [0x26][count:u16][player:u16]...
+ * </pre>
+ */
+public class SpectatorStream implements UserInterface {
+
+    public static final byte KEYFRAME = 0x20;
+    public static final byte SLOT = 0x21;
+    public static final byte TOKENS = 0x22;
+    public static final byte SCORE = 0x23;
+    public static final byte FREEZE = 0x24;
+    public static final byte TIMER = 0x25;
+    public static final byte WINNER = 0x26;
+
+    public static final int EMPTY = 0xFFFF;
+
+    private final Config config;
+    private final UserInterface ui;
+
+    /**
+     * The game state as seen by the stream (guarded by this), used to build keyframes.
+     */
+    private final int[] slotToCard;
+    private final long[][] tokens;
+    private final int[] scores;
+    private final long[] freezes;
+    private byte timerMode;
+    private long timerAt;     // the deadline of a countdown or the origin of an elapsed timer (epoch millis)
+    private long timerWarn = -1;
+    private int sinceKeyframe;
+
+    private final List<Subscription> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * A subscriber's view of the stream. Frames are consumed by a single consumer thread via poll or take.
+     */
+    public class Subscription {
+
+        private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+        private boolean needsKeyframe = true;
+        private boolean closed = false;
+        private long coalesced = 0;
+
+        /**
+         * Called by the publishing (game) thread while holding the stream's lock, never waits.
+         */
+        private synchronized void offer(byte[] frame) {
+            if (closed || needsKeyframe) return;
+
+            // a newer timer replaces a timer that was not consumed yet
+            byte[] last = frames.peekLast();
+            if (last != null && last[0] == TIMER && frame[0] == TIMER) {
+                frames.pollLast();
+                coalesced++;
+            }
+
+            // too slow: drop everything, the consumer will get a keyframe instead
+            else if (frames.size() >= config.spectatorBufferFrames) {
+                coalesced += frames.size() + 1;
+                frames.clear();
+                needsKeyframe = true;
+                notifyAll();
+                return;
+            }
+
+            frames.addLast(frame);
+            notifyAll();
+        }
+
+        private synchronized void replaceWithKeyframe(byte[] keyframe) {
+            if (closed) return;
+            frames.clear();
+            frames.addLast(keyframe);
+            needsKeyframe = false;
+            notifyAll();
+        }
+
+        /**
+         * @return - the next frame or null if there is none at the moment.
+         */
+        public byte[] poll() {
+            synchronized (this) {
+                if (closed) return null;
+                if (!needsKeyframe) return frames.pollFirst();
+            }
+            // lock order is stream then subscription, as when publishing
+            synchronized (SpectatorStream.this) {
+                synchronized (this) {
+                    if (needsKeyframe) replaceWithKeyframe(keyframe());
+                    return frames.pollFirst();
+                }
+            }
+        }
+
+        /**
+         * Waits for the next frame.
+         *
+         * @return - the next frame or null if the subscription was closed.
+         */
+        public byte[] take() throws InterruptedException {
+            while (true) {
+                byte[] frame = poll();
+                if (frame != null) return frame;
+                synchronized (this) {
+                    if (closed) return null;
+                    if (frames.isEmpty() && !needsKeyframe) wait();
+                }
+            }
+        }
+
+        /**
+         * @return - the number of frames that were merged or dropped because this subscriber was too slow.
+         */
+        public synchronized long coalesced() {
+            return coalesced;
+        }
+
+        public void close() {
+            subscribers.remove(this);
+            synchronized (this) {
+                closed = true;
+                frames.clear();
+                notifyAll();
+            }
+        }
+    }
+
+    public SpectatorStream(Config config, UserInterface ui) {
+        this.config = config;
+        this.ui = ui;
+        slotToCard = new int[config.tableSize];
+        Arrays.fill(slotToCard, EMPTY);
+        tokens = new long[config.tableSize][(config.players + 63) / 64];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+    }
+
+    /**
+     * Adds a subscriber. Its first frame is a keyframe of the current state.
+     */
+    public Subscription subscribe() {
+        Subscription subscription = new Subscription();
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Returns the length of the frame at the buffer's position, or -1 if it is not complete yet.
+     *
+     * @param buffer - a buffer in read mode (its position is not changed).
+     */
+    public static int frameLength(ByteBuffer buffer) {
+        int p = buffer.position();
+        int remaining = buffer.remaining();
+        if (remaining < 1) return -1;
+        int length;
+        switch (buffer.get(p)) {
+            case KEYFRAME:
+                if (remaining < 6) return -1;
+                int words = buffer.get(p + 5);
+                length = 23 + (buffer.getShort(p + 1) & 0xFFFF) * (2 + 8 * words) + (buffer.getShort(p + 3) & 0xFFFF) * 12;
+                break;
+            case SLOT: length = 5; break;
+            case TOKENS:
+                if (remaining < 4) return -1;
+                length = 4 + 8 * buffer.get(p + 3);
+                break;
+            case SCORE: length = 7; break;
+            case FREEZE: length = 11; break;
+            case TIMER: length = 18; break;
+            case WINNER:
+                if (remaining < 3) return -1;
+                length = 3 + 2 * (buffer.getShort(p + 1) & 0xFFFF);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown frame type " + buffer.get(p));
+        }
+        return remaining < length ? -1 : length;
+    }
+
+    // must be called while holding the stream's lock
+    private byte[] keyframe() {
+        int words = tokens[0].length;
+        ByteBuffer frame = ByteBuffer.allocate(23 + slotToCard.length * (2 + 8 * words) + scores.length * 12);
+        frame.put(KEYFRAME).putShort((short) slotToCard.length).putShort((short) scores.length).put((byte) words);
+        putTimer(frame);
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            frame.putShort((short) slotToCard[slot]);
+            for (long word : tokens[slot]) frame.putLong(word);
+        }
+        for (int player = 0; player < scores.length; player++)
+            frame.putInt(scores[player]).putLong(freezes[player]);
+        return frame.array();
+    }
+
+    // must be called while holding the stream's lock
+    private void publish(byte[] frame) {
+        if (subscribers.isEmpty()) return;
+        for (Subscription subscription : subscribers)
+            subscription.offer(frame);
+
+        if (++sinceKeyframe >= config.spectatorKeyframeFrames) {
+            sinceKeyframe = 0;
+            byte[] keyframe = keyframe();
+            for (Subscription subscription : subscribers)
+                subscription.offer(keyframe);
+        }
+    }
+
+    private byte[] tokensFrame(int slot) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + 8 * tokens[slot].length).put(TOKENS).putShort((short) slot).put((byte) tokens[slot].length);
+        for (long word : tokens[slot]) frame.putLong(word);
+        return frame.array();
+    }
+
+    private synchronized void slot(int slot, int card) {
+        slotToCard[slot] = card;
+        publish(ByteBuffer.allocate(5).put(SLOT).putShort((short) slot).putShort((short) card).array());
+    }
+
+    private synchronized void token(int player, int slot, boolean placed) {
+        if (placed) tokens[slot][player >> 6] |= 1L << player;
+        else tokens[slot][player >> 6] &= ~(1L << player);
+        publish(tokensFrame(slot));
+    }
+
+    private synchronized void clearTokens(int slot) {
+        Arrays.fill(tokens[slot], 0L);
+        publish(tokensFrame(slot));
+    }
+
+    // keeps the timer as a point in time, so keyframes built later carry the current value
+    private synchronized void timer(byte mode, long at, long warn) {
+        timerMode = mode;
+        timerAt = at;
+        timerWarn = warn;
+        publish(putTimer(ByteBuffer.allocate(18).put(TIMER)).array());
+    }
+
+    // must be called while holding the stream's lock
+    private ByteBuffer putTimer(ByteBuffer frame) {
+        long now = System.currentTimeMillis();
+        if (timerMode == 2)
+            return frame.put(timerMode).putLong(now - timerAt).putLong(-1);
+        long millies = Math.max(0, timerAt - now);
+        return frame.put((byte) (millies <= timerWarn ? 1 : 0)).putLong(millies).putLong(timerWarn);
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        if (ui != null) ui.placeCard(card, slot);
+        slot(slot, card);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        if (ui != null) ui.removeCard(slot);
+        slot(slot, EMPTY);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        if (ui != null) ui.placeCards(cards, slots);
+        for (int i = 0; i < slots.length; i++)
+            slot(slots[i], cards[i]);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        if (ui != null) ui.removeCards(slots);
+        for (int slot : slots)
+            slot(slot, EMPTY);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        if (ui != null) ui.placeToken(player, slot);
+        token(player, slot, true);
+    }
+
+    @Override
+    public void removeTokens() {
+        if (ui != null) ui.removeTokens();
+        for (int slot = 0; slot < config.tableSize; slot++)
+            clearTokens(slot);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        if (ui != null) ui.removeTokens(slot);
+        clearTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        if (ui != null) ui.removeToken(player, slot);
+        token(player, slot, false);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        if (ui != null) ui.setCountdown(millies, warn);
+        timer((byte) 0, System.currentTimeMillis() + millies, warn ? millies : -1);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        if (ui != null) ui.setElapsed(millies);
+        timer((byte) 2, System.currentTimeMillis() - millies, -1);
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        if (ui != null) ui.setCountdownDeadline(deadline, warnMillies);
+        timer((byte) 0, deadline, warnMillies);
+    }
+
+    @Override
+    public void setElapsedOrigin(long origin) {
+        if (ui != null) ui.setElapsedOrigin(origin);
+        timer((byte) 2, origin, -1);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        if (ui != null) ui.setFreeze(player, millies);
+        synchronized (this) {
+            freezes[player] = millies;
+            publish(ByteBuffer.allocate(11).put(FREEZE).putShort((short) player).putLong(millies).array());
+        }
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        if (ui != null) ui.setScore(player, score);
+        synchronized (this) {
+            scores[player] = score;
+            publish(ByteBuffer.allocate(7).put(SCORE).putShort((short) player).putInt(score).array());
+        }
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        if (ui != null) ui.announceWinner(players);
+        ByteBuffer frame = ByteBuffer.allocate(3 + 2 * players.length).put(WINNER).putShort((short) players.length);
+        for (int player : players) frame.putShort((short) player);
+        synchronized (this) {
+            publish(frame.array());
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (ui != null) ui.dispose();
+        for (Subscription subscription : subscribers)
+            subscription.close();
+    }
+}
@@ -0,0 +1,243 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A user interface decorator that mirrors the live game state (slots, tokens, scores, freezes and timer) into a
+ * memory-mapped file, so that other local processes can observe the game without any system call or copy.
+ * <p>
+ * Updates are guarded by a seqlock: the writer makes the version odd, writes, and makes it even again, and a reader
+ * retries whenever it sees an odd version or the version changed while it was copying (see StateMirrorReader).
+ * <p>
+ * Layout (little-endian):
+ * <pre>
+ *  0 magic:i32 ('SETM')   4 layout:i32 (2)   8 version:i64
+ * 16 tableSize:i32       20 players:i32     24 words:i32       28 timerMode:i32 (0 countdown, 1 warning, 2 elapsed, 3 none)
+ * 32 timer:i64 (millis)  40 timerUpdated:i64 (epoch millis the timer was set at, the timer keeps running from there)
+ * 48 timerWarn:i64 (a countdown turns into a warning once at most timerWarn millis are left, -1 for never)
+ * 56 per slot [card:i32] (-1 if empty), then per slot [tokens:i64 x words] (bit p is set iff player p has a token),
+ *    then per player [score:i32][pad:i32][freeze:i64]
+ * </pre>
+ */
+public class StateMirror implements UserInterface {
+
+    public static final int MAGIC = 0x5345544D;
+    public static final int LAYOUT = 2;
+
+    public static final int VERSION = 8;
+    public static final int TABLE_SIZE = 16;
+    public static final int PLAYERS = 20;
+    public static final int WORDS = 24;
+    public static final int TIMER_MODE = 28;
+    public static final int TIMER = 32;
+    public static final int TIMER_UPDATED = 40;
+    public static final int TIMER_WARN = 48;
+    public static final int SLOTS = 56;
+
+    public static final int TIMER_COUNTDOWN = 0;
+    public static final int TIMER_WARNING = 1;
+    public static final int TIMER_ELAPSED = 2;
+    public static final int TIMER_NONE = 3;
+
+    private final Config config;
+    private final UserInterface ui;
+    private final MappedByteBuffer mirror;
+
+    private final int words;
+    private final int tokensOffset;
+    private final int playersOffset;
+
+    private long version;
+
+    public StateMirror(Config config, UserInterface ui) throws IOException {
+        this.config = config;
+        this.ui = ui;
+
+        words = (config.players + 63) / 64;
+        tokensOffset = SLOTS + config.tableSize * 4;
+        playersOffset = tokensOffset + config.tableSize * words * 8;
+        int size = playersOffset + config.players * 16;
+
+        try (RandomAccessFile file = new RandomAccessFile(config.stateMirrorFile, "rw")) {
+            file.setLength(size);
+            mirror = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        mirror.order(ByteOrder.LITTLE_ENDIAN);
+
+        beginWrite();
+        mirror.putInt(0, MAGIC);
+        mirror.putInt(4, LAYOUT);
+        mirror.putInt(TABLE_SIZE, config.tableSize);
+        mirror.putInt(PLAYERS, config.players);
+        mirror.putInt(WORDS, words);
+        mirror.putInt(TIMER_MODE, TIMER_NONE);
+        mirror.putLong(TIMER_WARN, -1L);
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            mirror.putInt(SLOTS + slot * 4, -1);
+            for (int word = 0; word < words; word++)
+                mirror.putLong(tokensOffset + (slot * words + word) * 8, 0L);
+        }
+        for (int player = 0; player < config.players; player++) {
+            mirror.putInt(playersOffset + player * 16, 0);
+            mirror.putLong(playersOffset + player * 16 + 8, 0L);
+        }
+        endWrite();
+    }
+
+    // seqlock writer side, must be called while holding the mirror's lock
+
+    private void beginWrite() {
+        mirror.putLong(VERSION, ++version);
+        MemoryFences.storeFence();
+    }
+
+    private void endWrite() {
+        MemoryFences.storeFence();
+        mirror.putLong(VERSION, ++version);
+    }
+
+    private synchronized void slot(int slot, int card) {
+        beginWrite();
+        mirror.putInt(SLOTS + slot * 4, card);
+        if (card < 0)
+            for (int word = 0; word < words; word++)
+                mirror.putLong(tokensOffset + (slot * words + word) * 8, 0L);
+        endWrite();
+    }
+
+    private synchronized void token(int player, int slot, boolean placed) {
+        int offset = tokensOffset + (slot * words + (player >> 6)) * 8;
+        long word = mirror.getLong(offset);
+        beginWrite();
+        mirror.putLong(offset, placed ? word | (1L << player) : word & ~(1L << player));
+        endWrite();
+    }
+
+    private synchronized void clearTokens(int slot) {
+        beginWrite();
+        for (int s = slot < 0 ? 0 : slot; s < (slot < 0 ? config.tableSize : slot + 1); s++)
+            for (int word = 0; word < words; word++)
+                mirror.putLong(tokensOffset + (s * words + word) * 8, 0L);
+        endWrite();
+    }
+
+    private synchronized void timer(int mode, long millies, long warn) {
+        beginWrite();
+        mirror.putInt(TIMER_MODE, mode);
+        mirror.putLong(TIMER, millies);
+        mirror.putLong(TIMER_UPDATED, System.currentTimeMillis());
+        mirror.putLong(TIMER_WARN, warn);
+        endWrite();
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        if (ui != null) ui.placeCard(card, slot);
+        slot(slot, card);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        if (ui != null) ui.removeCard(slot);
+        slot(slot, -1);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        if (ui != null) ui.placeCards(cards, slots);
+        for (int i = 0; i < slots.length; i++)
+            slot(slots[i], cards[i]);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        if (ui != null) ui.removeCards(slots);
+        for (int slot : slots)
+            slot(slot, -1);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        if (ui != null) ui.placeToken(player, slot);
+        token(player, slot, true);
+    }
+
+    @Override
+    public void removeTokens() {
+        if (ui != null) ui.removeTokens();
+        clearTokens(-1);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        if (ui != null) ui.removeTokens(slot);
+        clearTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        if (ui != null) ui.removeToken(player, slot);
+        token(player, slot, false);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        if (ui != null) ui.setCountdown(millies, warn);
+        timer(warn ? TIMER_WARNING : TIMER_COUNTDOWN, millies, warn ? millies : -1);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        if (ui != null) ui.setElapsed(millies);
+        timer(TIMER_ELAPSED, millies, -1);
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        if (ui != null) ui.setCountdownDeadline(deadline, warnMillies);
+        long millies = Math.max(0, deadline - System.currentTimeMillis());
+        timer(millies <= warnMillies ? TIMER_WARNING : TIMER_COUNTDOWN, millies, warnMillies);
+    }
+
+    @Override
+    public void setElapsedOrigin(long origin) {
+        if (ui != null) ui.setElapsedOrigin(origin);
+        timer(TIMER_ELAPSED, System.currentTimeMillis() - origin, -1);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        if (ui != null) ui.setFreeze(player, millies);
+        synchronized (this) {
+            beginWrite();
+            mirror.putLong(playersOffset + player * 16 + 8, millies);
+            endWrite();
+        }
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        if (ui != null) ui.setScore(player, score);
+        synchronized (this) {
+            beginWrite();
+            mirror.putInt(playersOffset + player * 16, score);
+            endWrite();
+        }
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        if (ui != null) ui.announceWinner(players);
+        timer(TIMER_NONE, 0, -1);
+    }
+
+    @Override
+    public void dispose() {
+        if (ui != null) ui.dispose();
+        mirror.force();
+    }
+}
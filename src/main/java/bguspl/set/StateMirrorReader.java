@@ -0,0 +1,155 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads consistent snapshots of a game state mirror (see StateMirror for the layout) straight from shared memory.
+ * Reading never blocks the game: a read that overlaps a write is simply retried.
+ * <p>
+ * Usage: StateMirrorReader [file] [interval millis]
+ */
+public class StateMirrorReader implements AutoCloseable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mirror;
+
+    public final int tableSize;
+    public final int players;
+    private final int words;
+    private final int tokensOffset;
+    private final int playersOffset;
+
+    /**
+     * A copy of the mirrored state, reused by consecutive reads.
+     */
+    public static class Snapshot {
+        public long version;
+        public int timerMode;
+        public long timer;
+        public long timerUpdated;
+        public long timerWarn;
+        public final int[] slotToCard;
+        public final long[][] tokens;
+        public final int[] scores;
+        public final long[] freezes;
+
+        public Snapshot(int tableSize, int players) {
+            slotToCard = new int[tableSize];
+            tokens = new long[tableSize][(players + 63) / 64];
+            scores = new int[players];
+            freezes = new long[players];
+        }
+
+        /**
+         * @param now - the current time (epoch millis).
+         * @return - the mode of the timer now (a countdown turns into a warning as it runs).
+         */
+        public int timerMode(long now) {
+            if (timerMode != StateMirror.TIMER_COUNTDOWN || timerWarn < 0) return timerMode;
+            return timer - (now - timerUpdated) <= timerWarn ? StateMirror.TIMER_WARNING : timerMode;
+        }
+
+        /**
+         * @return - true iff the player has a token on the slot.
+         */
+        public boolean token(int player, int slot) {
+            return (tokens[slot][player >> 6] & (1L << player)) != 0;
+        }
+    }
+
+    public StateMirrorReader(String filename) throws IOException {
+        file = new RandomAccessFile(filename, "r");
+        mirror = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        mirror.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mirror.capacity() < StateMirror.SLOTS || mirror.getInt(0) != StateMirror.MAGIC)
+            throw new IOException(filename + " is not a game state mirror");
+        if (mirror.getInt(4) != StateMirror.LAYOUT)
+            throw new IOException("unsupported state mirror layout " + mirror.getInt(4));
+
+        tableSize = mirror.getInt(StateMirror.TABLE_SIZE);
+        players = mirror.getInt(StateMirror.PLAYERS);
+        words = mirror.getInt(StateMirror.WORDS);
+        tokensOffset = StateMirror.SLOTS + tableSize * 4;
+        playersOffset = tokensOffset + tableSize * words * 8;
+    }
+
+    public Snapshot newSnapshot() {
+        return new Snapshot(tableSize, players);
+    }
+
+    /**
+     * @return - the current version of the mirror (it is even iff no write is in progress).
+     */
+    public long version() {
+        long version = mirror.getLong(StateMirror.VERSION);
+        MemoryFences.loadFence();
+        return version;
+    }
+
+    /**
+     * Copies a consistent state of the mirror into the snapshot.
+     *
+     * @return - the version of the state that was copied.
+     */
+    public long read(Snapshot snapshot) {
+        while (true) {
+            long version = version();
+            if ((version & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            snapshot.timerMode = mirror.getInt(StateMirror.TIMER_MODE);
+            snapshot.timer = mirror.getLong(StateMirror.TIMER);
+            snapshot.timerUpdated = mirror.getLong(StateMirror.TIMER_UPDATED);
+            snapshot.timerWarn = mirror.getLong(StateMirror.TIMER_WARN);
+            for (int slot = 0; slot < tableSize; slot++) {
+                snapshot.slotToCard[slot] = mirror.getInt(StateMirror.SLOTS + slot * 4);
+                for (int word = 0; word < words; word++)
+                    snapshot.tokens[slot][word] = mirror.getLong(tokensOffset + (slot * words + word) * 8);
+            }
+            for (int player = 0; player < players; player++) {
+                snapshot.scores[player] = mirror.getInt(playersOffset + player * 16);
+                snapshot.freezes[player] = mirror.getLong(playersOffset + player * 16 + 8);
+            }
+
+            MemoryFences.loadFence();
+            if (mirror.getLong(StateMirror.VERSION) == version) {
+                snapshot.version = version;
+                return version;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Prints the mirrored state whenever it changes.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String filename = args.length > 0 ? args[0] : "set.mirror";
+        long interval = args.length > 1 ? Long.parseLong(args[1]) : 100;
+
+        try (StateMirrorReader reader = new StateMirrorReader(filename)) {
+            Snapshot snapshot = reader.newSnapshot();
+            long last = -1;
+            while (true) {
+                if (reader.version() != last) {
+                    last = reader.read(snapshot);
+                    System.out.printf("v%d timer(%d)=%d table=%s scores=%s%n", snapshot.version, snapshot.timerMode,
+                            snapshot.timer, Arrays.toString(snapshot.slotToCard), Arrays.toString(snapshot.scores));
+                }
+                Thread.sleep(interval);
+            }
+        }
+    }
+}
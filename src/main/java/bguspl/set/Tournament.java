@@ -0,0 +1,152 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many headless bot-only games concurrently and aggregates their results into a leaderboard.
+ * Each game is an independent dealer (with its own table and players) run to the end on a worker of a fixed pool,
+ * so the number of workers is the number of games in progress. A game in progress uses its worker (the dealer), one
+ * thread per player (waiting for key presses most of the time, which the shared computer players' scheduler
+ * generates), and the claim verifier and hint threads if they are enabled.
+ * A game that fails is logged and counted, and the tournament goes on without it.
+ */
+public class Tournament {
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+    private final Leaderboard leaderboard;
+
+    public Tournament(Logger logger, Config config, Util util) {
+        this.logger = logger;
+        this.config = config;
+        this.util = util;
+        this.leaderboard = new Leaderboard(config);
+    }
+
+    /**
+     * Plays config.tournamentGames games and writes the leaderboard to the results files.
+     */
+    public void run() {
+
+        int parallelism = config.tournamentParallelism > 0 ? config.tournamentParallelism : Runtime.getRuntime().availableProcessors();
+        logger.severe("starting tournament of " + config.tournamentGames + " games on " + parallelism + " workers");
+        System.out.println("Running " + config.tournamentGames + " games on " + parallelism + " workers...");
+
+        long start = System.currentTimeMillis();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "tournament-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> games = new ArrayList<>(config.tournamentGames);
+        for (int i = 0; i < config.tournamentGames; i++)
+            games.add(pool.submit(this::playGame));
+        pool.shutdown();
+
+        int failed = 0;
+        try {
+            for (int i = 0; i < games.size(); i++) {
+                try {
+                    games.get(i).get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    logger.log(Level.SEVERE, "tournament game " + (i + 1) + " failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+        }
+
+        long millis = System.currentTimeMillis() - start;
+        logger.severe("tournament finished: " + leaderboard.games() + " games in " + millis + " ms, " + failed + " failed");
+        System.out.println("Played " + leaderboard.games() + " games in " + millis / 1000.0 + " seconds"
+                + (failed > 0 ? " (" + failed + " failed, see the log)." : "."));
+
+        try {
+            leaderboard.write(config.tournamentResults);
+            System.out.println("Results written to " + config.tournamentResults + ".csv and " + config.tournamentResults + ".json");
+        } catch (IOException e) {
+            logger.severe("cannot write tournament results: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Plays a single game to the end on the calling (pool) thread and records its result.
+     */
+    private void playGame() {
+
+        Env env = new Env(logger, config, new HeadlessUserInterface(), util);
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        long start = System.currentTimeMillis();
+        dealer.run();
+
+        int[] winners = dealer.winners();
+        if (winners == null) return;
+        leaderboard.recordGame(winners, System.currentTimeMillis() - start);
+        for (Player player : players)
+            leaderboard.recordPlayer(player.id, player.score(), player.penalties(), player.claims(), player.claimNanos());
+    }
+
+    /**
+     * A user interface that discards all updates (tournament games are not displayed).
+     */
+    private static class HeadlessUserInterface implements UserInterface {
+
+        @Override
+        public void placeCard(int card, int slot) {}
+
+        @Override
+        public void removeCard(int slot) {}
+
+        @Override
+        public void placeToken(int player, int slot) {}
+
+        @Override
+        public void removeTokens() {}
+
+        @Override
+        public void removeTokens(int slot) {}
+
+        @Override
+        public void removeToken(int player, int slot) {}
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setFreeze(int player, long millies) {}
+
+        @Override
+        public void setScore(int player, int score) {}
+
+        @Override
+        public void announceWinner(int[] players) {}
+
+        @Override
+        public void dispose() {}
+    }
+}
@@ -0,0 +1,53 @@
+package bguspl.set;
+
+/**
+ * Tests many candidate triples at once for the three-valued features variant (featureSize == 3), where three
+ * cards form a legal set iff every feature of the third card is the one that completes the first two
+ * (the sum of the three values is divisible by 3).
+ * <p>
+ * The cards are given as struct-of-arrays feature columns (columns[f][i] is the value of feature f of card i), so an
+ * evaluator can compare a whole run of third cards per instruction. On Java 17+ built with the java17 profile and run
+ * with --add-modules jdk.incubator.vector, best() returns a vectorized evaluator; otherwise the scalar one.
+ */
+public interface TripleEvaluator {
+
+    /**
+     * Finds the cards c in [from, to) such that the cards a, b, c form a legal set.
+     *
+     * @param columns - the feature columns of the cards.
+     * @param a       - the index of the first card.
+     * @param b       - the index of the second card.
+     * @param from    - the index of the first candidate third card.
+     * @param to      - the index after the last candidate third card.
+     * @param out     - receives the indices c found, in increasing order (at least to - from long).
+     * @param need    - scratch space for the feature values that complete the pair (one per feature).
+     * @return - the number of indices found.
+     */
+    int evaluate(byte[][] columns, int a, int b, int from, int to, int[] out, byte[] need);
+
+    /**
+     * @return - the fastest evaluator available in this runtime.
+     */
+    static TripleEvaluator best() {
+        try {
+            return (TripleEvaluator) Class.forName("bguspl.set.VectorTripleEvaluator").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return new ScalarTripleEvaluator();
+        }
+    }
+
+    /**
+     * @return - the feature columns of the cards (for featureSize == 3).
+     */
+    static byte[][] columns(Config config, int[] cards) {
+        byte[][] columns = new byte[config.featureCount][cards.length];
+        for (int i = 0; i < cards.length; i++) {
+            int card = cards[i];
+            for (int f = config.featureCount - 1; f >= 0; f--) {
+                columns[f][i] = (byte) (card % 3);
+                card /= 3;
+            }
+        }
+        return columns;
+    }
+}
@@ -18,6 +18,27 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images of several slots, one slot after the other (config.tableDelayMillis apart).
+     * Returns immediately, the user interface is responsible for the dealing animation.
+     * @param cards - the card ids.
+     * @param slots - the slot numbers (respectively).
+     */
+    default void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < slots.length; i++)
+            placeCard(cards[i], slots[i]);
+    }
+
+    /**
+     * Draw empty card images in several slots, one slot after the other (config.tableDelayMillis apart).
+     * Returns immediately, the user interface is responsible for the animation.
+     * @param slots - the slot numbers.
+     */
+    default void removeCards(int[] slots) {
+        for (int slot : slots)
+            removeCard(slot);
+    }
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
@@ -56,6 +77,26 @@ public interface UserInterface {
      */
     void setElapsed(long millies);
 
+    /**
+     * Count down to the specified deadline. The user interface keeps the countdown running on its own (in the warning
+     * style during the last warnMillies) until another countdown or elapsed time is set.
+     * @param deadline    - the time (as in System.currentTimeMillis) when the countdown reaches zero.
+     * @param warnMillies - the length of the warning period at the end of the countdown.
+     */
+    default void setCountdownDeadline(long deadline, long warnMillies) {
+        long millies = Math.max(0, deadline - System.currentTimeMillis());
+        setCountdown(millies, millies <= warnMillies);
+    }
+
+    /**
+     * Show the time elapsed since the specified origin. The user interface keeps the time running on its own
+     * until another countdown or elapsed time is set.
+     * @param origin - the time (as in System.currentTimeMillis) to count from.
+     */
+    default void setElapsedOrigin(long origin) {
+        setElapsed(System.currentTimeMillis() - origin);
+    }
+
     /**
      * Set the player text in the score panel to show remaining freeze time.
      * If milliseconds > 0, show player name in red, and add freeze time.
@@ -4,10 +4,14 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -71,8 +75,18 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     private class TimerPanel extends JPanel {
 
+        private static final int FRAME_MILLIS = 33;
+
         private final JLabel timerField;
 
+        // the running timer (when the clock is running): a countdown deadline or an elapsed time origin
+        private final Timer clock;
+        private volatile boolean running;
+        private volatile boolean countdown;
+        private volatile long deadline;
+        private volatile long warnMillies;
+        private volatile long origin;
+
         private String generateTime(long millies, boolean warn) {
             if (warn)
                 return format("Remaining Time: %.2f", (double) millies / 1000.0f);
@@ -88,15 +102,60 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             timerField.setForeground(Color.BLACK);
 
             add(timerField);
+
+            clock = new Timer(FRAME_MILLIS, e -> frame());
         }
 
         private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
-            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+            running = false;
+            clock.stop();
+            showCountdown(millies, warn);
         }
 
         private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+            running = false;
+            clock.stop();
+            showElapsed(millies);
+        }
+
+        private void setCountdownDeadline(long deadline, long warnMillies) {
+            this.deadline = deadline;
+            this.warnMillies = warnMillies;
+            countdown = true;
+            running = true;
+            clock.restart();
+        }
+
+        private void setElapsedOrigin(long origin) {
+            this.origin = origin;
+            countdown = false;
+            running = true;
+            clock.restart();
+        }
+
+        // called by the clock on the event dispatch thread
+        private void frame() {
+            if (!running) return;
+            if (countdown) {
+                long millies = Math.max(0, deadline - System.currentTimeMillis());
+                showCountdown(millies, millies <= warnMillies);
+            } else
+                showElapsed(System.currentTimeMillis() - origin);
+        }
+
+        private void showCountdown(long millies, boolean warn) {
+            setText(generateTime(millies, warn));
+            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+        }
+
+        private void showElapsed(long millies) {
+            setText("Elapsed time: " + millies / 1000);
+        }
+
+        // most frames show the same text (whole seconds)
+        private void setText(String text) {
+            if (!text.equals(timerField.getText()))
+                timerField.setText(text);
         }
     }
 
@@ -105,8 +164,20 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private final Image emptyCard;
         private final Image[] deck;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
-        private final JLabel[][] tokenText;
+
+        // per slot, bit p of the slot's words is set iff player p has a token on the slot
+        private final int words;
+        private final AtomicLongArray playerTokens;
+
+        // the names on the token overlay, laid out once per player (on first paint) and only drawn afterwards
+        private final Font tokenFont = UIManager.getFont("Label.font");
+        private GlyphVector[] nameGlyphs;
+        private GlyphVector separatorGlyph;
+        private final int[] line;
+
+        // the dealing animation: pending {slot, card} steps (card -1 for removal), one step per timer tick
+        private final ArrayDeque<int[]> animation = new ArrayDeque<>();
+        private final Timer animationTimer;
 
         private Image loadImageResource(String filename) {
             URL imageResource = getClass().getClassLoader().getResource(filename);
@@ -128,47 +199,75 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                 deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
             emptyCard = loadImageResource("cards/empty_card.png");
 
+            // init the cards on the table grid as empty cards
             grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
-            for (int row = 0; row < config.rows; row++) {
-                for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
-                    // init the JLabel selection overlay
-                    tokenText[row][column] = new JLabel("");
-                    tokenText[row][column].setVerticalAlignment(JLabel.TOP);
-                    tokenText[row][column].setHorizontalAlignment(JLabel.CENTER);
-                    tokenText[row][column].setOpaque(false);
-                    tokenText[row][column].setBorder(BorderFactory.createLineBorder(Color.black));
-                    tokenText[row][column].setBounds((column * config.cellWidth), (row * config.cellHeight), config.cellWidth, config.cellHeight);
-                    add(tokenText[row][column]);
-                }
+            for (Image[] row : grid)
+                Arrays.fill(row, emptyCard);
+
+            words = (config.players + 63) / 64;
+            playerTokens = new AtomicLongArray(config.tableSize * words);
+            line = new int[config.players];
+
+            animationTimer = new Timer((int) Math.max(1, config.tableDelayMillis), e -> animationStep());
+        }
+
+        private void animate(int[] slots, int[] cards) {
+            if (config.tableDelayMillis <= 0) {
+                for (int i = 0; i < slots.length; i++)
+                    setSlot(slots[i], cards == null ? -1 : cards[i]);
+                return;
+            }
+            synchronized (animation) {
+                for (int i = 0; i < slots.length; i++)
+                    animation.addLast(new int[]{slots[i], cards == null ? -1 : cards[i]});
+                animationTimer.start();
+            }
+        }
+
+        private void animationStep() {
+            int[] step;
+            synchronized (animation) {
+                step = animation.pollFirst();
+                if (animation.isEmpty()) animationTimer.stop();
             }
+            if (step != null) setSlot(step[0], step[1]);
+        }
+
+        private void setSlot(int slot, int card) {
+            if (card < 0) removeCard(slot);
+            else placeCard(slot, card);
+        }
+
+        private void placeCards(int[] slots, int[] cards) {
+            animate(slots, cards);
+        }
+
+        private void removeCards(int[] slots) {
+            animate(slots, null);
         }
 
         private void placeCard(int slot, int card) {
             int row = slot / config.columns;
             int column = slot % config.columns;
             grid[row][column] = deck[card];
-            validate();
-            repaint();
+            repaintSlot(slot);
         }
 
         private void removeCard(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
             grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            repaintSlot(slot);
         }
 
         private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            int index = slot * words + (player >> 6);
+            long bit = 1L << player;
+            long tokens;
+            do {
+                tokens = playerTokens.get(index);
+            } while (!playerTokens.compareAndSet(index, tokens, tokens | bit));
+            repaintSlot(slot);
         }
 
         private void removeTokens() {
@@ -177,76 +276,220 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
 
         private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            for (int word = 0; word < words; word++)
+                playerTokens.set(slot * words + word, 0L);
+            repaintSlot(slot);
         }
 
         private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            int index = slot * words + (player >> 6);
+            long bit = 1L << player;
+            long tokens;
+            do {
+                tokens = playerTokens.get(index);
+            } while (!playerTokens.compareAndSet(index, tokens, tokens & ~bit));
+            repaintSlot(slot);
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
-            }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+        private void repaintSlot(int slot) {
+            int row = slot / config.columns;
+            int column = slot % config.columns;
+            repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
+            Graphics2D g2 = (Graphics2D) g;
+            if (nameGlyphs == null) {
+                FontRenderContext frc = g2.getFontRenderContext();
+                nameGlyphs = new GlyphVector[config.players];
+                for (int player = 0; player < config.players; player++)
+                    nameGlyphs[player] = tokenFont.createGlyphVector(frc, config.playerNames[player]);
+                separatorGlyph = tokenFont.createGlyphVector(frc, ", ");
+            }
+
+            // draw card images and the token overlay of the cells in the clip
+            Rectangle clip = g.getClipBounds();
             for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+                for (int column = 0; column < config.columns; column++) {
+                    int x = column * config.cellWidth, y = row * config.cellHeight;
+                    if (clip != null && !clip.intersects(x, y, config.cellWidth, config.cellHeight)) continue;
+                    g.drawImage(grid[row][column], x, y, this);
+                    paintTokens(g2, row * config.columns + column, x, y);
+                    g.setColor(Color.black);
+                    g.drawRect(x, y, config.cellWidth - 1, config.cellHeight - 1);
+                }
+        }
+
+        /**
+         * Draws the names of the players that have a token on the slot, centered and wrapped to the cell, walking only
+         * the set bits of the slot's token mask. Names that do not fit in the cell are counted in a last "+n" line.
+         */
+        private void paintTokens(Graphics2D g, int slot, int x, int y) {
+            FontMetrics metrics = g.getFontMetrics(tokenFont);
+            float separator = (float) separatorGlyph.getLogicalBounds().getWidth();
+            float lineHeight = metrics.getHeight();
+            float baseline = y + metrics.getAscent();
+            g.setColor(Color.black);
+
+            int count = 0;
+            float width = 0;
+            for (int word = 0; word < words; word++)
+                for (long tokens = playerTokens.get(slot * words + word); tokens != 0; tokens &= tokens - 1) {
+                    int player = (word << 6) + Long.numberOfTrailingZeros(tokens);
+                    float nameWidth = (float) nameGlyphs[player].getLogicalBounds().getWidth();
+                    if (count > 0 && width + separator + nameWidth > config.cellWidth) {
+                        if (baseline + 2 * lineHeight > y + config.cellHeight) {
+                            int more = count;
+                            for (int rest = word; rest < words; rest++)
+                                more += Long.bitCount(rest == word ? tokens : playerTokens.get(slot * words + rest));
+                            g.setFont(tokenFont);
+                            g.drawString("+" + more, x + (config.cellWidth - metrics.stringWidth("+" + more)) / 2f, baseline);
+                            return;
+                        }
+                        drawLine(g, count, width, separator, x, baseline);
+                        baseline += lineHeight;
+                        count = 0;
+                        width = 0;
+                    }
+                    width += (count > 0 ? separator : 0) + nameWidth;
+                    line[count++] = player;
+                }
+            if (count > 0)
+                drawLine(g, count, width, separator, x, baseline);
+        }
+
+        private void drawLine(Graphics2D g, int count, float width, float separator, int x, float baseline) {
+            float position = x + Math.max(0, (config.cellWidth - width) / 2);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    g.drawGlyphVector(separatorGlyph, position, baseline);
+                    position += separator;
+                }
+                GlyphVector name = nameGlyphs[line[i]];
+                g.drawGlyphVector(name, position, baseline);
+                position += (float) name.getLogicalBounds().getWidth();
+            }
         }
     }
 
-    private class PlayersPanel extends JPanel {
+    /**
+     * The scoreboard: a row per player (name, freeze countdown and score), sorted by score. The order is kept
+     * incrementally (a player whose score changes moves past the players it overtakes), and only the rows inside the
+     * visible part of the scroll pane are painted, so very large player counts cost only what is on the screen.
+     */
+    private class PlayersPanel extends JScrollPane {
+
+        private static final int VISIBLE_ROWS = 5;
 
-        private final JLabel[][] playersTable;
+        private final Scoreboard scoreboard = new Scoreboard();
 
         private PlayersPanel() {
-            this.setLayout(new GridLayout(2, config.players));
-            this.setPreferredSize(new Dimension(config.players * config.playerCellWidth, config.rows * config.playerCellHeight));
-            this.playersTable = new JLabel[2][config.players];
-            for (int i = 0; i < config.players; i++) {
-                this.playersTable[0][i] = new JLabel(config.playerNames[i]);
-                this.playersTable[0][i].setFont(new Font("Serif", Font.BOLD, config.fontSize));
-                this.playersTable[0][i].setHorizontalAlignment(JLabel.CENTER);
-                this.add(playersTable[0][i]);
-            }
+            setViewportView(scoreboard);
+            setHorizontalScrollBarPolicy(HORIZONTAL_SCROLLBAR_NEVER);
+            setBorder(BorderFactory.createEmptyBorder());
+            int scrollBar = config.players > VISIBLE_ROWS ? getVerticalScrollBar().getPreferredSize().width : 0;
+            getViewport().setPreferredSize(new Dimension(config.columns * config.cellWidth - scrollBar,
+                    Math.min(config.players, VISIBLE_ROWS) * scoreboard.rowHeight));
+            getVerticalScrollBar().setUnitIncrement(scoreboard.rowHeight);
+        }
+
+        private void setFreeze(int player, long millies) {
+            scoreboard.setFreeze(player, millies);
+        }
+
+        private void setScore(int player, int score) {
+            scoreboard.setScore(player, score);
+        }
+    }
+
+    private class Scoreboard extends JComponent {
+
+        private final Font nameFont = new Font("Serif", Font.BOLD, config.fontSize);
+        private final Font scoreFont = new Font("Serif", Font.PLAIN, config.fontSize);
+        private final int rowHeight;
+
+        // guarded by this
+        private final int[] scores = new int[config.players];
+        private final long[] freezes = new long[config.players];
+        private final int[] order = new int[config.players]; // the players by rank
+        private final int[] ranks = new int[config.players]; // the rank of every player
+
+        private Scoreboard() {
+            for (int player = 0; player < config.players; player++)
+                order[player] = ranks[player] = player;
+            rowHeight = Math.max(config.playerCellHeight, getFontMetrics(nameFont).getHeight());
+            setOpaque(true);
+            setBackground(UIManager.getColor("Panel.background"));
+            setPreferredSize(new Dimension(0, config.players * rowHeight));
+        }
 
-            for (int i = 0; i < config.players; i++) {
-                this.playersTable[1][i] = new JLabel("0");
-                this.playersTable[1][i].setFont(new Font("Serif", Font.PLAIN, config.fontSize));
-                this.playersTable[1][i].setHorizontalAlignment(JLabel.CENTER);
-                this.add(playersTable[1][i]);
+        // whether the player at rank a should be above the player at rank b
+        private boolean above(int a, int b) {
+            int first = order[a], second = order[b];
+            return scores[first] > scores[second] || scores[first] == scores[second] && first < second;
+        }
+
+        private void swap(int a, int b) {
+            int player = order[a];
+            order[a] = order[b];
+            order[b] = player;
+            ranks[order[a]] = a;
+            ranks[order[b]] = b;
+        }
+
+        private void setScore(int player, int score) {
+            int from, to;
+            synchronized (this) {
+                scores[player] = score;
+                from = to = ranks[player];
+                while (to > 0 && above(to, to - 1)) swap(to, --to);
+                while (to < order.length - 1 && above(to + 1, to)) swap(to, ++to);
             }
+            repaintRows(Math.min(from, to), Math.max(from, to));
         }
 
         private void setFreeze(int player, long millies) {
-            if (millies > 0) {
-                this.playersTable[0][player].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
-                this.playersTable[0][player].setForeground(Color.RED);
-            } else {
-                this.playersTable[0][player].setText(config.playerNames[player]);
-                this.playersTable[0][player].setForeground(Color.BLACK);
+            int rank;
+            synchronized (this) {
+                freezes[player] = millies;
+                rank = ranks[player];
             }
+            repaintRows(rank, rank);
         }
 
-        private void setScore(int player, int score) {
-            playersTable[1][player].setText(Integer.toString(score));
+        private void repaintRows(int first, int last) {
+            repaint(0, first * rowHeight, getWidth(), (last - first + 1) * rowHeight);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            FontMetrics nameMetrics = g.getFontMetrics(nameFont);
+            FontMetrics scoreMetrics = g.getFontMetrics(scoreFont);
+            int baselineOffset = (rowHeight + nameMetrics.getAscent() - nameMetrics.getDescent()) / 2;
+            int first = Math.max(0, clip.y / rowHeight);
+            int last = Math.min(config.players - 1, (clip.y + clip.height - 1) / rowHeight);
+
+            synchronized (this) {
+                for (int rank = first; rank <= last; rank++) {
+                    int player = order[rank];
+                    int baseline = rank * rowHeight + baselineOffset;
+                    String name = freezes[player] > 0 ? config.playerNames[player] + " (" + freezes[player] / 1000 + ")" : config.playerNames[player];
+                    g.setFont(nameFont);
+                    g.setColor(freezes[player] > 0 ? Color.RED : Color.BLACK);
+                    g.drawString(name, config.fontSize / 2, baseline);
+
+                    String score = Integer.toString(scores[player]);
+                    g.setFont(scoreFont);
+                    g.setColor(Color.BLACK);
+                    g.drawString(score, getWidth() - config.fontSize / 2 - scoreMetrics.stringWidth(score), baseline);
+                }
+            }
         }
     }
 
@@ -270,6 +513,8 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             if (players.length == 1) text = "THE WINNER IS: " + names.get(0) + "!!!";
             else text = "IT IS A DRAW: " + String.join(" AND ", names) + " WON!!!";
             winnerAnnouncement.setText(text);
+            timerPanel.running = false;
+            timerPanel.clock.stop();
             timerPanel.setVisible(false);
         }
     }
@@ -284,6 +529,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        gamePanel.placeCards(slots, cards);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        gamePanel.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         gamePanel.placeToken(player, slot);
@@ -314,6 +569,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         timerPanel.setElapsed(millies);
     }
 
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillies) {
+        timerPanel.setCountdownDeadline(deadline, warnMillies);
+    }
+
+    @Override
+    public void setElapsedOrigin(long origin) {
+        timerPanel.setElapsedOrigin(origin);
+    }
+
     @Override
     public void setFreeze(int player, long millies) {
         playersPanel.setFreeze(player, millies);
@@ -1,6 +1,7 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.stream.LongStream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -31,6 +32,14 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Finds a card that forms a legal set with the given cards.
+     *
+     * @param cards - an array of one card less than a set.
+     * @return - the smallest card, other than the given cards, that forms a legal set with them, or -1 if there is none.
+     */
+    int completeSet(int[] cards);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +49,45 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Searches the sets in the given collection of cards and passes them to the visitor one by one, without
+     * collecting them, until the visitor stops the search. Large collections may be searched in parallel, in which
+     * case the visitor is still called by one thread at a time, but not necessarily in the order of the cards.
+     *
+     * @param deck    - a collection of cards (may not include null objects).
+     * @param visitor - the visitor of the sets found.
+     * @return - the number of sets visited.
+     */
+    int visitSets(List<Integer> deck, SetVisitor visitor);
+
+    /**
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - the number of legal sets in the collection.
+     */
+    int countSets(List<Integer> deck);
+
+    /**
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - true iff the collection contains a legal set (stops at the first one found).
+     */
+    boolean anySet(List<Integer> deck);
+
+    /**
+     * Streams the sets in the given collection of cards lazily (sets are searched as the stream is consumed), each
+     * one packed into a long (see unpackSet). The stream can be made parallel, and is split by the first card of the sets.
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - a stream of the packed sets.
+     * @throws IllegalArgumentException - if a set of card ids of this deck size does not fit in a long.
+     */
+    LongStream streamSets(List<Integer> deck);
+
+    /**
+     * @param set - a set packed by streamSets.
+     * @return - the card ids of the set, sorted.
+     */
+    int[] unpackSet(long set);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
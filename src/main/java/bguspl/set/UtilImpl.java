@@ -1,23 +1,69 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
  */
 public class UtilImpl implements Util {
 
+    private static final Histogram findSetsNanos = Metrics.histogram("util.findSetsNanos");
+
+    /**
+     * The number of cards from which sets of three-valued features are searched with the batch triple evaluator.
+     */
+    private static final int BATCH_MIN_CARDS = 32;
+
+    /**
+     * The number of cards from which the search is split across the common fork/join pool (when it has more than
+     * one thread), and the number of first cards a task scans without splitting further.
+     */
+    private static final int PARALLEL_MIN_CARDS = 256;
+    private static final int PARALLEL_LEAF_CARDS = 4;
+
     private final Config config;
+    private final SetRuleTable rule;
+    private final TripleEvaluator evaluator;
+    private final CompletionTables tables;
+    private final boolean completions;
 
     public UtilImpl(Config config) {
+        this(config, null);
+    }
+
+    /**
+     * @param tables - the precomputed tables of the config's deck (null to compute everything on the fly).
+     */
+    public UtilImpl(Config config, CompletionTables tables) {
+        SetRule setRule = SetRule.forName(config.setRule);
         this.config = config;
+        this.rule = new SetRuleTable(setRule != null ? setRule : SetRule.CLASSIC, config);
+
+        // the triple evaluator and the completion tables only know the classic rule of three-valued features
+        boolean classicTriples = config.featureSize == 3 && rule.sameAs(SetRule.CLASSIC);
+        this.evaluator = classicTriples ? TripleEvaluator.best() : null;
+        this.tables = tables;
+        this.completions = classicTriples && tables != null && tables.hasCompletions();
     }
 
     private void cardToFeatures(int card, int[] features) {
+        if (tables != null) {
+            for (int i = 0; i < config.featureCount; ++i)
+                features[i] = tables.feature(card, i);
+            return;
+        }
         for (int i = config.featureCount - 1; i >= 0; --i) {
             features[i] = card % config.featureSize;
             card /= config.featureSize;
@@ -40,54 +86,422 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
+        if (cards.length == 3 && completions)
+            return tables.complete(cards[0], cards[1]) == cards[2];
+        return rule.test(cards);
+    }
 
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
+    @Override
+    public int completeSet(int[] cards) {
+        if (cards.length == 2 && completions)
+            return tables.complete(cards[0], cards[1]);
+        return rule.complete(cards);
+    }
+
+    @Override
+    public List<int[]> findSets(List<Integer> deck, int count) {
+        long start = System.nanoTime();
+        try {
+            if (parallel(deck))
+                return findSetsParallel(deck, count);
 
-            if (sameSame == butDifferent) return false;
+            LinkedList<int[]> sets = new LinkedList<>();
+            int[] set = new int[config.featureSize];
+            Cursor cursor = new Cursor(search(toArray(deck)), 0, deck.size());
+            while (sets.size() < count && cursor.next(set))
+                sets.add(set.clone());
+            return sets;
+        } finally {
+            findSetsNanos.record(System.nanoTime() - start);
         }
-        return true;
     }
 
     @Override
-    public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
-        int r = config.featureSize;
-        int[] combination = new int[r];
-
-        for (int i = 0; i < r; ++i)
-            combination[i] = i;
-
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+    public int visitSets(List<Integer> deck, SetVisitor visitor) {
+        long start = System.nanoTime();
+        try {
+            if (parallel(deck))
+                return visitSetsParallel(deck, visitor);
+
+            int visited = 0;
+            int[] set = new int[config.featureSize];
+            Cursor cursor = new Cursor(search(toArray(deck)), 0, deck.size());
+            while (cursor.next(set)) {
+                visited++;
+                if (!visitor.visit(set)) break;
+            }
+            return visited;
+        } finally {
+            findSetsNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int countSets(List<Integer> deck) {
+        if (!parallel(deck))
+            return visitSets(deck, set -> true);
+
+        long start = System.nanoTime();
+        int count = new ParallelSearch<Integer>(search(toArray(deck))) {
+            @Override
+            Integer scan(Cursor cursor) {
+                int sets = 0;
+                int[] set = new int[config.featureSize];
+                while (cursor.next(set))
+                    sets++;
+                return sets;
+            }
+
+            @Override
+            Integer merge(Integer left, Integer right) {
+                return left + right;
+            }
+        }.invoke();
+        findSetsNanos.record(System.nanoTime() - start);
+        return count;
+    }
+
+    @Override
+    public boolean anySet(List<Integer> deck) {
+        if (!parallel(deck))
+            return visitSets(deck, set -> false) > 0;
+
+        long start = System.nanoTime();
+        boolean any = new ParallelSearch<Boolean>(search(toArray(deck))) {
+            @Override
+            Boolean scan(Cursor cursor) {
+                if (done || !cursor.next(new int[config.featureSize])) return false;
+                done = true;
+                return true;
             }
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
-            combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            @Override
+            Boolean merge(Boolean left, Boolean right) {
+                return left || right;
+            }
+        }.invoke();
+        findSetsNanos.record(System.nanoTime() - start);
+        return any;
+    }
+
+    @Override
+    public LongStream streamSets(List<Integer> deck) {
+        if ((long) packBits() * config.featureSize > 63)
+            throw new IllegalArgumentException("a set of " + config.featureSize + " cards out of " + config.deckSize + " does not fit in a long");
+        return StreamSupport.longStream(new SetSpliterator(new Cursor(search(toArray(deck)), 0, deck.size())), false);
+    }
+
+    @Override
+    public int[] unpackSet(long set) {
+        int bits = packBits();
+        int[] cards = new int[config.featureSize];
+        for (int i = cards.length - 1; i >= 0; i--, set >>>= bits)
+            cards[i] = (int) (set & ((1L << bits) - 1));
+        return cards;
+    }
+
+    // the number of bits of a card id in a packed set
+    private int packBits() {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(config.deckSize - 1));
+    }
+
+    private static int[] toArray(List<Integer> deck) {
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; i++)
+            cards[i] = deck.get(i);
+        return cards;
+    }
+
+    // the search of the cards' sets, by pairs if the deck is large enough for it
+    private Search search(int[] cards) {
+        if (evaluator == null || cards.length < BATCH_MIN_CARDS)
+            return new Search(cards, null, null);
+        if (completions) {
+            int[] positions = new int[config.deckSize];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < cards.length; i++)
+                positions[cards[i]] = i;
+            return new Search(cards, null, positions);
+        }
+        return new Search(cards, TripleEvaluator.columns(config, cards), null);
+    }
+
+    /**
+     * The cards to search, and for three-valued features, how to find the third cards of a pair: a lookup of the
+     * completing card in the tables (and of its deck position), or a batch test of all the later cards.
+     */
+    private class Search {
+
+        private final int[] cards;
+        private final byte[][] columns;
+        private final int[] positions;
+
+        Search(int[] cards, byte[][] columns, int[] positions) {
+            this.cards = cards;
+            this.columns = columns;
+            this.positions = positions;
+        }
+
+        boolean byPairs() {
+            return columns != null || positions != null;
+        }
+
+        // the positions c > b such that the cards at a, b, c form a legal set, in increasing order
+        int thirds(int a, int b, int[] out, byte[] need) {
+            if (columns != null)
+                return evaluator.evaluate(columns, a, b, b + 1, cards.length, out, need);
+            int c = positions[tables.complete(cards[a], cards[b])];
+            if (c <= b) return 0;
+            out[0] = c;
+            return 1;
+        }
+    }
+
+    /**
+     * Enumerates the sets whose first card (by deck position) is in a range of the deck, lazily and in lexicographic
+     * order of the card positions. The range can be split to search it in parallel.
+     */
+    private class Cursor {
+
+        private final Search search;
+        private final int[] cards;
+        private final int[] combination;  // the deck positions of the current candidate
+        private final int[] found;        // the third cards that complete the current pair (when searching by pairs)
+        private final byte[] need;        // the evaluator's scratch space (when searching by feature columns)
+        private int foundCount = 0;
+        private int foundNext = 0;
+        private int to;
+        private boolean started = false;
+
+        Cursor(Search search, int from, int to) {
+            this.search = search;
+            this.cards = search.cards;
+            this.combination = new int[config.featureSize];
+            this.found = search.byPairs() ? new int[cards.length] : null;
+            this.need = search.columns != null ? new byte[search.columns.length] : null;
+            this.to = Math.min(to, cards.length - combination.length + 1);
+            combination[0] = from;
+        }
+
+        /**
+         * Finds the next set.
+         *
+         * @param set - filled with the card ids of the set found, sorted.
+         * @return - false iff there are no more sets.
+         */
+        boolean next(int[] set) {
+            return found != null ? nextTriple(set) : nextCombination(set);
+        }
+
+        // for every pair, all the third cards are found at once
+        private boolean nextTriple(int[] set) {
+            int n = cards.length;
+            while (true) {
+                if (foundNext < foundCount) {
+                    set[0] = cards[combination[0]];
+                    set[1] = cards[combination[1]];
+                    set[2] = cards[found[foundNext++]];
+                    Arrays.sort(set);
+                    return true;
+                }
+
+                if (!started) {
+                    started = true;
+                    combination[1] = combination[0] + 1;
+                } else if (++combination[1] >= n - 1) {
+                    combination[0]++;
+                    combination[1] = combination[0] + 1;
+                }
+                if (combination[0] >= to) return false;
+                foundCount = search.thirds(combination[0], combination[1], found, need);
+                foundNext = 0;
+            }
+        }
+
+        private boolean nextCombination(int[] set) {
+            int n = cards.length;
+            int r = combination.length;
+            while (true) {
+                if (!started) {
+                    started = true;
+                    for (int i = 1; i < r; ++i)
+                        combination[i] = combination[0] + i;
+                } else {
+                    // generate next combination in lexicographic order
+                    int t = r - 1;
+                    while (t != 0 && combination[t] == n - r + t) --t;
+                    combination[t]++;
+                    for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+                }
+                if (combination[0] >= to) return false;
+
+                for (int i = 0; i < r; ++i)
+                    set[i] = cards[combination[i]];
+                Arrays.sort(set);
+                if (testSet(set)) return true;
+            }
+        }
+
+        /**
+         * Splits off the second half of the first cards this cursor did not start on yet.
+         *
+         * @return - a cursor over the split range, or null if the range is too small to split.
+         */
+        Cursor trySplit() {
+            int from = started ? combination[0] + 1 : combination[0];
+            if (to - from < 2) return null;
+            int middle = (from + to) >>> 1;
+            Cursor split = new Cursor(search, middle, to);
+            to = middle;
+            return split;
+        }
+
+        long estimateSize() {
+            return Math.max(0, to - combination[0]);
+        }
+    }
+
+    private class SetSpliterator implements Spliterator.OfLong {
+
+        private final Cursor cursor;
+        private final int[] set = new int[config.featureSize];
+
+        SetSpliterator(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (!cursor.next(set)) return false;
+            int bits = packBits();
+            long packed = 0;
+            for (int card : set)
+                packed = packed << bits | card;
+            action.accept(packed);
+            return true;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            Cursor split = cursor.trySplit();
+            return split == null ? null : new SetSpliterator(split);
+        }
+
+        // the number of first cards left, the number of sets is not known before they are searched
+        @Override
+        public long estimateSize() {
+            return cursor.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+
+    // whether the deck is searched in parallel
+    private boolean parallel(List<Integer> deck) {
+        return deck.size() >= PARALLEL_MIN_CARDS && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    // every task collects its own sets (merged in deck order when the tasks join), and all the tasks stop once count
+    // sets were found
+    private List<int[]> findSetsParallel(List<Integer> deck, int count) {
+        AtomicInteger found = new AtomicInteger();
+        List<int[]> sets = new ParallelSearch<List<int[]>>(search(toArray(deck))) {
+            @Override
+            List<int[]> scan(Cursor cursor) {
+                List<int[]> sets = new ArrayList<>();
+                int[] set = new int[config.featureSize];
+                while (!done && cursor.next(set)) {
+                    sets.add(set.clone());
+                    // the shared count is only needed (and touched) when the search may stop early
+                    if (count != Integer.MAX_VALUE && found.incrementAndGet() >= count)
+                        done = true;
+                }
+                return sets;
+            }
+
+            @Override
+            List<int[]> merge(List<int[]> left, List<int[]> right) {
+                left.addAll(right);
+                return left;
+            }
+        }.invoke();
+        return sets.size() > count ? new ArrayList<>(sets.subList(0, count)) : sets;
+    }
+
+    // the tasks search in parallel, and pass their sets to the visitor one at a time (in no particular order)
+    private int visitSetsParallel(List<Integer> deck, SetVisitor visitor) {
+        Object lock = new Object();
+        return new ParallelSearch<Integer>(search(toArray(deck))) {
+            @Override
+            Integer scan(Cursor cursor) {
+                int visited = 0;
+                int[] set = new int[config.featureSize];
+                while (!done && cursor.next(set)) {
+                    synchronized (lock) {
+                        if (done) break;
+                        visited++;
+                        if (!visitor.visit(set)) done = true;
+                    }
+                }
+                return visited;
+            }
+
+            @Override
+            Integer merge(Integer left, Integer right) {
+                return left + right;
+            }
+        }.invoke();
+    }
+
+    /**
+     * Splits the search by the first card of the sets across the common fork/join pool. Every task scans the sets
+     * whose first card is in its range into a result, the results are merged when the tasks join, and all the tasks
+     * stop once one of them sets done.
+     */
+    private abstract class ParallelSearch<R> {
+
+        private final Search search;
+        volatile boolean done = false;
+
+        ParallelSearch(Search search) {
+            this.search = search;
+        }
+
+        // scans the sets of the cursor (stopping early if done is set)
+        abstract R scan(Cursor cursor);
+
+        // the result of two adjacent ranges, the left one first
+        abstract R merge(R left, R right);
+
+        R invoke() {
+            return ForkJoinPool.commonPool().invoke(new Task(0, search.cards.length - config.featureSize + 1));
+        }
+
+        private class Task extends RecursiveTask<R> {
+
+            private final int from;
+            private final int to;
+
+            Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected R compute() {
+                if (to - from <= PARALLEL_LEAF_CARDS || done)
+                    return scan(new Cursor(search, from, to));
+
+                int middle = (from + to) >>> 1;
+                Task left = new Task(from, middle);
+                left.fork();
+                R right = new Task(middle, to).compute();
+                return merge(left.join(), right);
+            }
         }
-        return sets;
     }
 
     public void spin() {
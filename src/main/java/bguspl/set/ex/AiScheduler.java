@@ -0,0 +1,37 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small pool of threads shared by all the computer players (of all the games in the process).
+ * Each computer player is a chain of one-shot tasks, one per key press, instead of a thread of its own.
+ */
+class AiScheduler {
+
+    private static ScheduledThreadPoolExecutor executor;
+
+    private static synchronized ScheduledThreadPoolExecutor executor(int threads) {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), r -> {
+                Thread thread = new Thread(r, "computer-scheduler-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the task once after the given delay.
+     *
+     * @param threads - the number of threads of the pool (used only when the pool is created).
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis, int threads) {
+        return executor(threads).schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
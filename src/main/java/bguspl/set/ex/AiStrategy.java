@@ -0,0 +1,43 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+/**
+ * The decision logic of a computer player: which key to press next and when.
+ * Each computer player has its own strategy object, which is only called by one scheduler thread at a time.
+ */
+public interface AiStrategy {
+
+    /**
+     * Chooses the next key to press.
+     *
+     * @return - the slot to press, or -1 to press nothing this time.
+     */
+    int nextSlot();
+
+    /**
+     * @return - the number of milliseconds to wait before the next call to nextSlot.
+     */
+    long nextDelayMillis();
+
+    /**
+     * Creates the strategy named by config.computerStrategy for a computer player.
+     *
+     * @param env   - the game environment object.
+     * @param table - the table object.
+     * @param id    - the id of the computer player.
+     */
+    static AiStrategy create(Env env, Table table, int id) {
+        switch (env.config.computerStrategy) {
+            case "seeker":
+                return new SetSeekingStrategy(env, table, id);
+            case "human":
+                return new HumanLikeStrategy(env, table, id);
+            case "random":
+                return new RandomStrategy(env);
+            default:
+                env.logger.severe("unknown computer strategy " + env.config.computerStrategy + ", using random.");
+                return new RandomStrategy(env);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A player's claim that its tokens form a legal set, together with its own reply channel.
+ * The dealer completes the claim exactly once and the claiming thread is unparked, no monitor is involved.
+ * <p>
+ * Each player owns a single preallocated claim that is reused for all of its claims (a player has at most one
+ * claim in flight), so a claim's round trip does not allocate.
+ */
+class Claim {
+
+    public final int player;
+    public final int[] cards;
+    public final int[] slots;
+
+    // set by the claiming thread before the claim is passed to the dealer
+    private Thread claimant;
+    private long timestamp;
+    private long claimEpoch;
+
+    // written by the verifier before the (volatile) verified flag and read by the dealer after it
+    private boolean legal;
+    private long verifiedEpoch;
+    private volatile boolean verified;
+
+    // written by the dealer before the (volatile) verdict and read after it
+    private long epoch;
+    private long freezeUntil;
+    private volatile Verdict verdict;
+
+    public Claim(int player, int size) {
+        this.player = player;
+        this.cards = new int[size];
+        this.slots = new int[size];
+    }
+
+    /**
+     * Prepares the claim for reuse by the calling thread (after cards and slots were filled).
+     *
+     * @param claimEpoch - the table epoch the cards were read in.
+     */
+    public void reset(long claimEpoch) {
+        this.claimant = Thread.currentThread();
+        this.timestamp = System.nanoTime();
+        this.claimEpoch = claimEpoch;
+        this.verified = false;
+        this.verdict = null;
+    }
+
+    /**
+     * Called by the verifier once the claim was checked against the table and the set rules.
+     *
+     * @param legal         - true iff the cards form a legal set (only checked if the cards were on the table).
+     * @param verifiedEpoch - the table epoch in which the cards were on the table, or -1 if they were not.
+     */
+    public void verified(boolean legal, long verifiedEpoch) {
+        this.legal = legal;
+        this.verifiedEpoch = verifiedEpoch;
+        this.verified = true;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public boolean legal() {
+        return legal;
+    }
+
+    public long verifiedEpoch() {
+        return verifiedEpoch;
+    }
+
+    /**
+     * Called by the dealer to answer the claim and wake the claiming thread.
+     *
+     * @param verdict     - the dealer's answer.
+     * @param epoch       - the table epoch in which the claim was judged.
+     * @param freezeUntil - the time (in millis) until which the player is frozen.
+     */
+    public void complete(Verdict verdict, long epoch, long freezeUntil) {
+        this.epoch = epoch;
+        this.freezeUntil = freezeUntil;
+        this.verdict = verdict;
+        LockSupport.unpark(claimant);
+    }
+
+    /**
+     * Called by the claiming thread to wait for the verdict.
+     *
+     * @return - the verdict, or null if the thread was interrupted first.
+     */
+    public Verdict await() {
+        while (verdict == null) {
+            LockSupport.park(this);
+            if (Thread.interrupted())
+                return verdict;
+        }
+        return verdict;
+    }
+
+    // the time (System.nanoTime) the claim was submitted
+    public long timestamp() {
+        return timestamp;
+    }
+
+    // the table epoch the claimed cards were read in
+    public long claimEpoch() {
+        return claimEpoch;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public long freezeUntil() {
+        return freezeUntil;
+    }
+}
@@ -0,0 +1,84 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Verifies claims before the dealer commits them: checks that the claimed cards are still on the table (against
+ * the table epoch) and that they form a legal set. Verification is read-only, so a small pool of threads can verify
+ * many claims in parallel while the dealer stays the only thread that changes the table.
+ * With no threads, claims are verified by the dealer itself when it commits them.
+ */
+class ClaimVerifier {
+
+    private final Env env;
+    private final Table table;
+    private final ExecutorService pool;
+    private final Runnable onVerified;
+
+    /**
+     * @param threads    - the number of verifying threads (0 verifies on the dealer thread).
+     * @param onVerified - called by a verifying thread after each claim it verified.
+     */
+    public ClaimVerifier(Env env, Table table, int threads, Runnable onVerified) {
+        this.env = env;
+        this.table = table;
+        this.onVerified = onVerified;
+        if (threads > 0) {
+            AtomicInteger counter = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "claim-verifier-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else
+            pool = null;
+    }
+
+    /**
+     * @return - true iff claims are verified by the pool (and must be verified before they are taken).
+     */
+    public boolean parallel() {
+        return pool != null;
+    }
+
+    /**
+     * Verifies the claim in the background (does nothing if there is no pool).
+     */
+    public void submit(Claim claim) {
+        if (pool != null)
+            pool.execute(() -> {
+                try {
+                    verify(claim);
+                } catch (Throwable e) {
+                    // the dealer commits the claims in order, so a claim that failed is rejected rather than left pending
+                    env.logger.log(Level.SEVERE, "cannot verify the claim of player " + (claim.player + 1), e);
+                    claim.verified(false, -1);
+                } finally {
+                    onVerified.run();
+                }
+            });
+    }
+
+    /**
+     * Verifies the claim on the calling thread.
+     */
+    public void verify(Claim claim) {
+
+        // no card changed since the claim was made if the epoch is the same
+        long epoch = table.epoch();
+        if (claim.claimEpoch() != epoch)
+            epoch = table.relevantEpoch(claim.cards, claim.slots);
+
+        claim.verified(epoch >= 0 && env.util.testSet(claim.cards), epoch);
+    }
+
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+}
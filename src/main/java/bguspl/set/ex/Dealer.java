@@ -1,13 +1,14 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Histogram;
+import bguspl.set.Metrics;
 
-import java.util.Collections;
+import java.util.Arrays;
 
 import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
@@ -15,6 +16,17 @@ import java.util.stream.IntStream;
  */
 public class Dealer implements Runnable {
 
+    private static final Histogram claimLatency = Metrics.histogram("claims.latencyNanos");
+    private static final LongAdder points = Metrics.counter("claims.points");
+    private static final LongAdder penalties = Metrics.counter("claims.penalties");
+    private static final LongAdder irrelevant = Metrics.counter("claims.irrelevant");
+    private static final LongAdder reshuffles = Metrics.counter("dealer.reshuffles");
+
+    /**
+     * The longest the dealer waits for the verifiers before checking the claims again.
+     */
+    private static final long VERIFIED_WAIT_MILLIS = 100;
+
     /**
      * The game environment object.
      */
@@ -27,9 +39,10 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The list of card ids that are left in the dealer's deck (a view of the deck in the room's state).
      */
     private final List<Integer> deck;
+    private final RoomState state;
 
     /**
      * True iff game should be terminated.
@@ -43,34 +56,33 @@ public class Dealer implements Runnable {
 
     // Added
     protected setsQueue setQ;
+    private final ClaimVerifier verifier;
     private Thread[] playersThreads;
-    protected Object[] locks;
     private int[] slotsOrder;
     private Random rand;
-    private boolean firstSleep;
     private Object sleepLock;
+    private int[] winners;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        state = table.state;
+        for (int card = 0; card < env.config.deckSize; card++)
+            state.pushDeck(card);
+        deck = state.deckView();
 
         //added
         terminate = false;
         playersThreads = new Thread[env.config.players];
         setQ = new setsQueue();
-        locks = new Object[env.config.players];
-        for (int i = 0; i < locks.length; i++){
-            locks[i] = new Object();
-        }
         slotsOrder = new int[env.config.tableSize];
         for (int i = 0; i < slotsOrder.length; i++){
             slotsOrder[i] = i;
         }
         rand = new Random();
-        firstSleep = true;
         sleepLock = new Object();
+        verifier = new ClaimVerifier(env, table, env.config.verifierThreads, this::wakeUp);
     }
 
     /**
@@ -92,22 +104,26 @@ public class Dealer implements Runnable {
         while (!shouldFinish()) {
 
             // Added
-            Collections.shuffle(deck);
+            state.shuffleDeck(rand);
             
             //in order to place the cards in random order on table
             shuffleArray(slotsOrder);
             
-            updateTimerDisplay(true);
+            showFullTimer();
             placeCardsOnTable();
 
+            // the turn starts once the cards (and the collection of the previous table) are on screen
+            table.awaitShown();
+
             //allow players to place tokens on table
             table.setCanPlaceToken(true);
             timerLoop();
             table.setCanPlaceToken(false);
 
-            // handle all players' requests that were placed on time
+            // handle all players' requests that were placed on time (waiting for the verifiers if they are behind)
             while (!setQ.isEmpty())
-                removeCardsFromTable();
+                if (!removeCardsFromTable())
+                    waitForVerifiedClaim();
 
             removeAllCardsFromTable();
         }
@@ -125,6 +141,10 @@ public class Dealer implements Runnable {
                 playersThreads[i].join();
             } catch (InterruptedException e) {}
         }
+        verifier.shutdown();
+
+        if (table.keyTrace.enabled())
+            env.logger.info(KeyTrace.summary() + System.lineSeparator() + table.keyTrace.recent(50));
 
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
@@ -135,16 +155,10 @@ public class Dealer implements Runnable {
     private void timerLoop() {
 
         // Added
-        if (env.config.turnTimeoutMillis > 0)
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-        else 
-            reshuffleTime = System.currentTimeMillis();
-
-        firstSleep = true;
+        resetTimer();
 
         while (!terminate && (env.config.turnTimeoutMillis <= 0 || System.currentTimeMillis() < reshuffleTime) && (env.config.turnTimeoutMillis > 0 || table.doSetExists())) {
             sleepUntilWokenOrTimeout();
-            updateTimerDisplay(false);
             removeCardsFromTable();
             placeCardsOnTable();
         }
@@ -156,6 +170,7 @@ public class Dealer implements Runnable {
     public void terminate() {
         env.ui.dispose();
         terminate = true;
+        wakeUp();
     }
 
     /**
@@ -164,67 +179,60 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !env.util.anySet(deck);
     }
 
     /**
-     * Checks cards should be removed from the table and removes them.
+     * Commits the next claim (in timestamp order): removes the cards from the table if the claim was verified as
+     * a legal set and the cards are still there, and answers the claim.
+     *
+     * @return - false iff there was no claim ready to commit.
      */
-    private void removeCardsFromTable() {
+    private boolean removeCardsFromTable() {
 
-        Triple<Integer, int[], int[]> toCheck = setQ.take();
+        // with a verifier pool, wait for the first claim to be verified so the claims are committed in order
+        Claim claim = verifier.parallel() ? setQ.takeVerified() : setQ.take();
 
-        if (toCheck != null){
+        if (claim != null){
+            if (!verifier.parallel())
+                verifier.verify(claim);
 
-            // extract data from the triple
-            int playerId = toCheck.getFirst();
-            int[] cards = toCheck.getSecond();
-            int[] slots = toCheck.getThird();
+            int[] cards = claim.cards;
+            int[] slots = claim.slots;
 
-            boolean toUpdateTimer = false;
+            boolean toResetTimer = false;
+            Verdict verdict = Verdict.IRRELEVANT;
+            long freezeMillis = 0;
 
             // check if the cards in the set are still on the table
-            if (table.isSetRelevant(cards, slots)){
+            // (no card changed since the claim was verified if the epoch is the same, only the dealer changes it)
+            if (claim.verifiedEpoch() >= 0 && (claim.verifiedEpoch() == table.epoch() || table.isSetRelevant(cards, slots))){
 
-                // check if legal set and give penalty or point
-                boolean legalSet = env.util.testSet(cards);
-                toUpdateTimer = legalSet;
-                players[playerId].toScore(legalSet);
+                // give penalty or point
+                boolean legalSet = claim.legal();
+                toResetTimer = legalSet;
+                verdict = legalSet ? Verdict.POINT : Verdict.PENALTY;
+                freezeMillis = legalSet ? env.config.pointFreezeMillis : env.config.penaltyFreezeMillis;
 
                 // remove the cards from the table if the set was legal
                 if (legalSet){
-                    for (int j = 0; j < slots.length; j++){
-                        table.removeCard(slots[j]);
-
-                        // remove all the tokens from the removed cards
-                        table.rw.dealerLock();
-                        for (int i = 0; i < players.length; i++){
-                            players[i].removeToken(slots[j]);
-                        }
-                        table.rw.dealerUnlock();
-                    }
+                    table.removeCards(slots);
+                    removeTokens(slots);
                     shuffleArray(slotsOrder);
                 }
             }
-            else 
-                players[playerId].toScore(null);
 
-            // wake player and pop from queue
-            synchronized(locks[playerId]) {
-                players[playerId].needToWait = false;
-                locks[playerId].notifyAll();
-            }
+            // answer the claim (this wakes the player, which may reuse the claim right away)
+            long latency = System.nanoTime() - claim.timestamp();
+            claim.complete(verdict, table.epoch(), System.currentTimeMillis() + freezeMillis);
+            claimLatency.record(latency);
+            GameEvents.claimAnswered(claim.player, verdict, latency);
+            (verdict == Verdict.POINT ? points : verdict == Verdict.PENALTY ? penalties : irrelevant).increment();
 
-            if (toUpdateTimer) {
-                updateTimerDisplay(true);
-                if (env.config.turnTimeoutMillis > 0){
-                    reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-                    firstSleep = true;
-                }
-                else 
-                    reshuffleTime = System.currentTimeMillis();
-            } 
+            if (toResetTimer)
+                resetTimer();
         }
+        return claim != null;
     }
 
     /**
@@ -233,92 +241,151 @@ public class Dealer implements Runnable {
     private void placeCardsOnTable() {
         
         // to know if new cards were placed
-        int deckSize = deck.size();
+        int deckSize = state.deckCount();
 
         // For each slot that equals null, remove the first card in the deck and place it on the table in random order
-        for (int i = 0; i < slotsOrder.length && deck.size() > 0; i++){
+        int[] cards = new int[slotsOrder.length];
+        int[] slots = new int[slotsOrder.length];
+        int count = 0;
+        for (int i = 0; i < slotsOrder.length && state.deckCount() > 0; i++){
             //if there is no card in this place
-            if (table.slotToCard[slotsOrder[i]] == null){
+            if (state.card(slotsOrder[i]) < 0){
                 //put a new card
-                int card = deck.remove(0);
-                table.placeCard(card, slotsOrder[i]); 
+                cards[count] = state.popDeck();
+                slots[count] = slotsOrder[i];
+                count++;
             }
         }
 
+        // sometimes make sure the new cards complete a set, so the players don't wait for a reshuffle
+        if (count > 0 && env.config.dealSetProbability > 0 && rand.nextDouble() < env.config.dealSetProbability)
+            dealSet(cards, count);
+
+        // all the new cards are placed at once
+        if (count > 0)
+            table.placeCards(Arrays.copyOf(cards, count), Arrays.copyOf(slots, count));
+
         // if new cards were placed, present hints
-        if (env.config.hints && deck.size() < deckSize) {
-            System.out.println();
-            System.out.println("New Hints:");
+        if (env.config.hints && state.deckCount() < deckSize)
             table.hints();
-        }
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Replaces the last of the new cards with the card from the deck that completes a legal set with other cards
+     * that will be on the table, if there is one. Tries at most tableSize random combinations, each is a single
+     * completion lookup in the deck.
+     *
+     * @param cards - the new cards, the first count of which will be dealt.
      */
-    private void sleepUntilWokenOrTimeout() {
-        
-        // if the queue isn't empty, don't sleep
-        if (setQ.isEmpty()){
-
-            // if there isn't time to update, wait until interrupted
-            if(env.config.turnTimeoutMillis < 0){
-                try {
-                    synchronized(sleepLock) {sleepLock.wait();}
-                } catch (InterruptedException e) {}
+    private void dealSet(int[] cards, int count) {
+
+        int setSize = env.config.featureSize;
+        if (setSize < 3) return;
+
+        // the cards that will be on the table besides the replaced one
+        int[] others = new int[slotsOrder.length];
+        int n = 0;
+        for (int slot = 0; slot < slotsOrder.length; slot++)
+            if (state.card(slot) >= 0)
+                others[n++] = state.card(slot);
+        for (int i = 0; i < count - 1; i++)
+            others[n++] = cards[i];
+        if (n < setSize - 1) return;
+
+        int[] chosen = new int[setSize - 1];
+        for (int attempt = 0; attempt < slotsOrder.length; attempt++){
+
+            // pick random distinct cards to complete
+            for (int i = 0; i < chosen.length; i++){
+                int j = i + rand.nextInt(n - i);
+                int temp = others[i];
+                others[i] = others[j];
+                others[j] = temp;
+                chosen[i] = others[i];
             }
-            
-            // if timer goes up
-            else if (env.config.turnTimeoutMillis == 0){
-                try {
-                    synchronized(sleepLock) {sleepLock.wait(1000);}
-                } catch (InterruptedException e) {}
+
+            int completion = env.util.completeSet(chosen);
+            if (completion == cards[count - 1])
+                return;
+            if (completion >= 0 && state.inDeck(completion)){
+                // the replaced card goes back to the deck
+                state.pushDeck(cards[count - 1]);
+                state.takeDeck(completion);
+                cards[count - 1] = completion;
+                return;
             }
-            
-            // if timer goes down
-            else {
-                try {
+        }
+    }
+
+    /**
+     * Sleep until the reshuffle time or until the thread is awakened for some purpose.
+     */
+    private void sleepUntilWokenOrTimeout() {
+
+        // if a claim is ready to commit, don't sleep
+        synchronized(sleepLock) {
+            if ((verifier.parallel() ? setQ.isFirstVerified() : !setQ.isEmpty()) || terminate)
+                return;
+            try {
+                // if timer goes down, wake up for the reshuffle
+                if (env.config.turnTimeoutMillis > 0){
                     long timeleft = reshuffleTime - System.currentTimeMillis();
-                    if (!firstSleep && timeleft > env.config.turnTimeoutWarningMillis)
-                        synchronized(sleepLock) {sleepLock.wait(1000);}
-                    else
-                        synchronized(sleepLock) {sleepLock.wait(10);}
-                } catch (InterruptedException e) {}
-            }
+                    if (timeleft > 0)
+                        sleepLock.wait(timeleft);
+                }
+
+                // otherwise the table changes only when woken
+                else
+                    sleepLock.wait();
+            } catch (InterruptedException e) {}
         }
-        firstSleep = false;
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Sleep until the first claim is verified, or for VERIFIED_WAIT_MILLIS at most.
      */
-    private void updateTimerDisplay(boolean reset) {
+    private void waitForVerifiedClaim() {
 
-        if (reset){
+        synchronized(sleepLock) {
+            if (setQ.isFirstVerified() || terminate)
+                return;
+            try {
+                sleepLock.wait(VERIFIED_WAIT_MILLIS);
+            } catch (InterruptedException e) {}
+        }
+    }
 
-            // if timer goes down
-            if(env.config.turnTimeoutMillis > 0)
-                env.ui.setCountdown(env.config.turnTimeoutMillis, false);
+    /**
+     * Restart the countdown (or the elapsed time) and publish it to the ui, which keeps it running on its own.
+     */
+    private void resetTimer() {
 
-            // if timer goes up
-            else if(env.config.turnTimeoutMillis == 0)
-                env.ui.setElapsed(0);
+        // if timer goes down
+        if (env.config.turnTimeoutMillis > 0){
+            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+            env.ui.setCountdownDeadline(reshuffleTime, env.config.turnTimeoutWarningMillis);
         }
-        else{
 
-            // if timer goes down
-            if(env.config.turnTimeoutMillis > 0){
-                long delta = reshuffleTime - System.currentTimeMillis();
-                if (delta > 0)
-                    env.ui.setCountdown(delta, delta <= env.config.turnTimeoutWarningMillis);
-                else
-                    env.ui.setCountdown(0, true);
-            }
+        // if timer goes up
+        else {
+            reshuffleTime = System.currentTimeMillis();
+            if (env.config.turnTimeoutMillis == 0)
+                env.ui.setElapsedOrigin(reshuffleTime);
+        }
+    }
 
-            // if timer goes up
-            else if (env.config.turnTimeoutMillis == 0)
-                env.ui.setElapsed(System.currentTimeMillis() - reshuffleTime);
-        }     
+    /**
+     * Show the full (stopped) timer while the table is dealt.
+     */
+    private void showFullTimer() {
+
+        // if timer goes down
+        if(env.config.turnTimeoutMillis > 0)
+            env.ui.setCountdown(env.config.turnTimeoutMillis, false);
+
+        // if timer goes up
+        else if(env.config.turnTimeoutMillis == 0)
+            env.ui.setElapsed(0);
     }
 
     /**
@@ -326,19 +393,33 @@ public class Dealer implements Runnable {
      */
     private void removeAllCardsFromTable() {
 
+        reshuffles.increment();
+        Object event = GameEvents.beginReshuffle();
+        int deckSize = state.deckCount();
+
         table.addToDeck(this);
         shuffleArray(slotsOrder);
 
-        for (int slot = 0; slot < env.config.tableSize; slot++){
-            table.removeCard(slotsOrder[slot]);
+        // all the cards are removed at once
+        int[] slots = slotsOrder.clone();
+        table.removeCards(slots);
+        removeTokens(slots);
+        GameEvents.reshuffled(event, state.deckCount() - deckSize);
+    }
 
-            // remove all the tokens from the removed cards
-            table.rw.dealerLock();
+    /**
+     * Removes all the players' tokens from the given slots.
+     */
+    private void removeTokens(int[] slots) {
+
+        table.rw.dealerLock();
+        for (int slot : slots){
             for (int i = 0; i < players.length; i++){
-                players[i].removeToken(slotsOrder[slot]);
+                players[i].removeToken(slot);
             }
-            table.rw.dealerUnlock();
         }
+        table.rw.dealerUnlock();
+        table.publishUiEvents();
     }
 
     /**
@@ -369,17 +450,31 @@ public class Dealer implements Runnable {
         }
         
         //announce winners
+        winners = players_id;
         env.ui.announceWinner(players_id);  
     }
 
+    /**
+     * The ids of the winning player/s, or null if the game is not over yet.
+     */
+    public int[] winners() {
+        return winners;
+    }
+
     // Added
-    public void pushToTestSet(Triple<Integer, int[], int[]> triple){
-        setQ.put(triple);
+    // the claim is answered through claim.complete
+    protected void pushToTestSet(Claim claim){
+        setQ.put(claim);
+        verifier.submit(claim);
+        wakeUp();
+    }
+
+    private void wakeUp(){
         synchronized(sleepLock) {sleepLock.notifyAll();}
     }
 
     public void addCard(int card){
-        deck.add(card);
+        state.pushDeck(card);
     }
     
     // create random order to put cards on table
@@ -0,0 +1,104 @@
+package bguspl.set.ex;
+
+/**
+ * Java Flight Recorder events of the game, so a recording (e.g. -XX:StartFlightRecording) shows the game's
+ * lifecycle and contention in JMC. The events are controlled with JFR's own settings (enabled, threshold).
+ * <p>
+ * The events are emitted by JfrGameEvents, which the java17 profile builds (see src/main/java17); without it, or
+ * when jdk.jfr cannot be loaded, every method does nothing. Either way no event is allocated unless it is enabled:
+ * the duration events are begun into an opaque handle, which is null when the event is not being recorded.
+ */
+final class GameEvents {
+
+    private GameEvents() {}
+
+    /**
+     * Emits the events (the default methods record nothing).
+     */
+    interface Recorder {
+
+        default void cardPlaced(int slot, int card) {}
+
+        default void cardRemoved(int slot, int card) {}
+
+        default void tokenPlaced(int player, int slot) {}
+
+        default void tokenRemoved(int player, int slot) {}
+
+        default void claimSubmitted(int player, long epoch) {}
+
+        default void claimAnswered(int player, Verdict verdict, long latencyNanos) {}
+
+        default Object beginFreeze() { return null; }
+
+        default void frozen(Object event, int player, boolean penalty) {}
+
+        default Object beginReshuffle() { return null; }
+
+        default void reshuffled(Object event, int cards) {}
+
+        default Object beginLockWait() { return null; }
+
+        default void lockWaited(Object event, boolean dealer) {}
+    }
+
+    private static final Recorder recorder = load();
+
+    private static Recorder load() {
+        try {
+            return (Recorder) Class.forName("bguspl.set.ex.JfrGameEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return new Recorder() {};
+        }
+    }
+
+    static void cardPlaced(int slot, int card) {
+        recorder.cardPlaced(slot, card);
+    }
+
+    static void cardRemoved(int slot, int card) {
+        recorder.cardRemoved(slot, card);
+    }
+
+    static void tokenPlaced(int player, int slot) {
+        recorder.tokenPlaced(player, slot);
+    }
+
+    static void tokenRemoved(int player, int slot) {
+        recorder.tokenRemoved(player, slot);
+    }
+
+    static void claimSubmitted(Claim claim) {
+        recorder.claimSubmitted(claim.player, claim.claimEpoch());
+    }
+
+    static void claimAnswered(int player, Verdict verdict, long latencyNanos) {
+        recorder.claimAnswered(player, verdict, latencyNanos);
+    }
+
+    // duration events are begun by the caller and committed with the handle they were begun into
+
+    static Object beginFreeze() {
+        return recorder.beginFreeze();
+    }
+
+    static void frozen(Object event, int player, boolean penalty) {
+        if (event != null) recorder.frozen(event, player, penalty);
+    }
+
+    static Object beginReshuffle() {
+        return recorder.beginReshuffle();
+    }
+
+    static void reshuffled(Object event, int cards) {
+        if (event != null) recorder.reshuffled(event, cards);
+    }
+
+    static Object beginLockWait() {
+        return recorder.beginLockWait();
+    }
+
+    static void lockWaited(Object event, boolean dealer) {
+        if (event != null) recorder.lockWaited(event, dealer);
+    }
+}
@@ -0,0 +1,98 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the hints (the legal sets on the table) on a background thread, at most once per table epoch, and prints
+ * them with a single write. Neither the dealer nor the table lock ever wait for the search or for the console.
+ * Only the latest request waits to be computed, older ones are dropped since their table is gone anyway.
+ */
+class HintEngine {
+
+    private final Env env;
+    private final Table table;
+    private final PrintStream out;
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The hints of one table epoch.
+     */
+    private static class Hints {
+        final long epoch;
+        final String text;
+
+        Hints(long epoch, String text) {
+            this.epoch = epoch;
+            this.text = text;
+        }
+    }
+
+    private volatile Hints latest = new Hints(-1, "");
+
+    public HintEngine(Env env, Table table, PrintStream out) {
+        this.env = env;
+        this.table = table;
+        this.out = out;
+    }
+
+    /**
+     * Computes and prints the hints of the current table in the background (unless they were printed already).
+     */
+    public synchronized void request() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), r -> {
+                Thread thread = new Thread(r, "hints");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        }
+        executor.execute(this::compute);
+    }
+
+    /**
+     * @return - the hints of the current table, or null if they were not computed yet.
+     */
+    public String current() {
+        Hints hints = latest;
+        return hints.epoch == table.epoch() ? hints.text : null;
+    }
+
+    private void compute() {
+        int[] slotToCard = new int[env.config.tableSize];
+        long epoch = table.snapshot(slotToCard);
+        if (epoch == latest.epoch) return;
+
+        List<Integer> cards = new ArrayList<>(slotToCard.length);
+        for (int card : slotToCard)
+            if (card >= 0)
+                cards.add(card);
+
+        StringBuilder sb = new StringBuilder().append(System.lineSeparator()).append("New Hints:").append(System.lineSeparator());
+        env.util.visitSets(cards, set -> {
+            int[] slots = new int[set.length];
+            for (int i = 0; i < set.length; i++)
+                for (int slot = 0; slot < slotToCard.length; slot++)
+                    if (slotToCard[slot] == set[i])
+                        slots[i] = slot;
+            Arrays.sort(slots);
+            sb.append("Hint: Set found: slots: ").append(Arrays.toString(slots))
+                    .append(" features: ").append(Arrays.deepToString(env.util.cardsToFeatures(set)))
+                    .append(System.lineSeparator());
+            return true;
+        });
+        latest = new Hints(epoch, sb.toString());
+
+        // the table changed meanwhile, a newer request will print its hints
+        if (table.epoch() != epoch) return;
+        out.print(sb);
+        out.flush();
+    }
+}
@@ -0,0 +1,43 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Random;
+
+/**
+ * A set seeker with human-like pacing: finding a set takes a log-normally distributed reaction time
+ * (median config.computerReactionMillis), the keys of a set are pressed a few hundred milliseconds apart,
+ * and once in a while a wrong key is pressed.
+ */
+class HumanLikeStrategy extends SetSeekingStrategy {
+
+    private static final double REACTION_SIGMA = 0.5;
+    private static final double KEY_MEDIAN_MILLIS = 250;
+    private static final double KEY_SIGMA = 0.3;
+    private static final double MISTAKE_PROBABILITY = 0.05;
+
+    private final Random random;
+
+    public HumanLikeStrategy(Env env, Table table, int id) {
+        super(env, table, id);
+        random = new Random();
+    }
+
+    @Override
+    public int nextSlot() {
+        if (random.nextDouble() < MISTAKE_PROBABILITY)
+            return random.nextInt(env.config.tableSize);
+        return super.nextSlot();
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        if (searching())
+            return logNormal(env.config.computerReactionMillis, REACTION_SIGMA);
+        return logNormal(KEY_MEDIAN_MILLIS, KEY_SIGMA);
+    }
+
+    private long logNormal(double median, double sigma) {
+        return Math.round(median * Math.exp(sigma * random.nextGaussian()));
+    }
+}
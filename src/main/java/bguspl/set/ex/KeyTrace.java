@@ -0,0 +1,171 @@
+package bguspl.set.ex;
+
+import bguspl.set.Histogram;
+import bguspl.set.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Traces key presses on their way from the input (keyboard, network or computer player) to the screen.
+ * Every press gets a trace id and a nanosecond timestamp per stage it reaches, or the reason it was dropped.
+ * The latest traces are kept in a bounded ring buffer (older traces are overwritten) and the latency of every stage
+ * since the press is recorded in a histogram of the metrics registry (keys.(stage)Nanos).
+ * <p>
+ * A trace is written by the threads it passes through, one after the other; reading the buffer while keys are
+ * pressed may show a trace in the middle of an update, which is good enough for diagnostics.
+ */
+class KeyTrace {
+
+    enum Stage {
+        PRESSED,    // the key was pressed (the input handler was called)
+        QUEUED,     // the key entered the player's actions queue
+        TAKEN,      // the player thread took the key from the queue
+        APPLIED,    // the token was placed or removed on the table
+        DISPLAYED,  // the token update was passed to the ui
+        CLAIMED,    // the key completed a set and the claim was passed to the dealer
+        ANSWERED    // the player got the dealer's verdict on the claim
+    }
+
+    enum Drop {
+        NONE,
+        FROZEN,      // the player was frozen
+        CLOSED,      // the table did not accept tokens (e.g. while dealing)
+        QUEUE_FULL,  // the player's actions queue was full
+        IGNORED,     // the slot was empty or the player had no tokens left
+        CLEARED      // the actions queue was cleared (after a verdict or between rounds)
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Drop[] DROPS = Drop.values();
+
+    private static final Histogram[] latencies = new Histogram[STAGES.length];
+    private static final LongAdder[] drops = new LongAdder[DROPS.length];
+
+    static {
+        for (Stage stage : STAGES)
+            latencies[stage.ordinal()] = Metrics.histogram("keys." + stage.name().toLowerCase() + "Nanos");
+        drops[Drop.FROZEN.ordinal()] = Metrics.counter("keys.droppedFrozen");
+        drops[Drop.CLOSED.ordinal()] = Metrics.counter("keys.droppedClosed");
+        drops[Drop.QUEUE_FULL.ordinal()] = Metrics.counter("keys.droppedQueueFull");
+        drops[Drop.IGNORED.ordinal()] = Metrics.counter("keys.droppedIgnored");
+        drops[Drop.CLEARED.ordinal()] = Metrics.counter("keys.droppedCleared");
+    }
+
+    private final int mask;
+    private final long[] ids;
+    private final int[] players;
+    private final int[] slots;
+    private final long[] times;
+    private final byte[] dropReasons;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param capacity - the number of traces to keep (rounded up to a power of two), 0 only counts the drops.
+     */
+    public KeyTrace(int capacity) {
+        int size = capacity <= 0 ? 0 : Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        ids = new long[size];
+        players = new int[size];
+        slots = new int[size];
+        times = new long[size * STAGES.length];
+        dropReasons = new byte[size];
+    }
+
+    public boolean enabled() {
+        return ids.length > 0;
+    }
+
+    // queue entries carry the trace id together with the slot
+    public static long pack(long trace, int slot) {
+        return trace << 16 | slot;
+    }
+
+    public static int slot(long action) {
+        return (int) (action & 0xFFFF);
+    }
+
+    public static long trace(long action) {
+        return action >>> 16;
+    }
+
+    /**
+     * Starts the trace of a key press.
+     *
+     * @param pressedNanos - the time (System.nanoTime) the key was pressed.
+     * @return - the trace id (0 if tracing is disabled).
+     */
+    public long begin(int player, int slot, long pressedNanos) {
+        if (!enabled()) return 0;
+        long id = next.incrementAndGet();
+        int index = (int) id & mask;
+        ids[index] = id;
+        players[index] = player;
+        slots[index] = slot;
+        dropReasons[index] = (byte) Drop.NONE.ordinal();
+        for (int stage = 1; stage < STAGES.length; stage++)
+            times[index * STAGES.length + stage] = 0;
+        times[index * STAGES.length] = pressedNanos;
+        return id;
+    }
+
+    /**
+     * Records that the traced key reached the stage.
+     */
+    public void stage(long id, Stage stage) {
+        if (id == 0) return;
+        int index = (int) id & mask;
+        if (ids[index] != id) return; // overwritten already
+        long now = System.nanoTime();
+        times[index * STAGES.length + stage.ordinal()] = now;
+        latencies[stage.ordinal()].record(now - times[index * STAGES.length]);
+    }
+
+    /**
+     * Records that the key was dropped (counted even if tracing is disabled).
+     */
+    public void drop(long id, Drop reason) {
+        drops[reason.ordinal()].increment();
+        if (id == 0) return;
+        int index = (int) id & mask;
+        if (ids[index] == id)
+            dropReasons[index] = (byte) reason.ordinal();
+    }
+
+    /**
+     * @return - the latest traces (at most count), oldest first, with the stage times relative to the press.
+     */
+    public String recent(int count) {
+        StringBuilder sb = new StringBuilder();
+        long last = next.get();
+        for (long id = Math.max(1, last - Math.min(count, ids.length) + 1); id <= last; id++) {
+            int index = (int) id & mask;
+            if (ids[index] != id) continue;
+            sb.append(String.format("key #%d player %d slot %d:", id, players[index] + 1, slots[index]));
+            long pressed = times[index * STAGES.length];
+            for (int stage = 1; stage < STAGES.length; stage++) {
+                long time = times[index * STAGES.length + stage];
+                if (time != 0)
+                    sb.append(String.format(" %s +%dus", STAGES[stage].name().toLowerCase(), (time - pressed) / 1000));
+            }
+            if (dropReasons[index] != Drop.NONE.ordinal())
+                sb.append(" dropped ").append(DROPS[dropReasons[index]].name().toLowerCase());
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return - the latency percentiles of every stage (since the press) and the drop counts.
+     */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder("key press latency since press:");
+        for (int stage = 1; stage < STAGES.length; stage++)
+            sb.append(System.lineSeparator()).append(STAGES[stage].name().toLowerCase()).append(' ').append(latencies[stage]);
+        sb.append(System.lineSeparator()).append("dropped:");
+        for (int drop = 1; drop < DROPS.length; drop++)
+            sb.append(' ').append(DROPS[drop].name().toLowerCase()).append('=').append(drops[drop].sum());
+        return sb.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package bguspl.set.ex;
 
-import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Level;
 
 import bguspl.set.Env;
 
@@ -29,9 +30,10 @@ public class Player implements Runnable {
     public final int id;
 
     /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
+     * The strategy of the AI (computer) player and its next scheduled key press.
      */
-    private Thread aiThread;
+    private AiStrategy strategy;
+    private volatile ScheduledFuture<?> aiTask;
 
     /**
      * True iff the player is human (not a computer player).
@@ -43,19 +45,16 @@ public class Player implements Runnable {
      */
     private volatile boolean terminate;
 
-    /**
-     * The current score of the player.
-     */
-    private int score;
-
     // Added
     private int tokenCounter;
     private Dealer dealer;
-    private actionsQueue<Integer> inActions;
-    private volatile Boolean toScore;
-    protected boolean needToWait;
+    private actionsQueue<Long> inActions; // the slots of the keys pressed, packed with their trace ids
     private Object TCLock;
-    private boolean freeze;
+    private volatile boolean freeze;
+    private final Claim claim;
+    private int penalties;
+    private int claims;
+    private long claimNanos;
 
     /**
      * The class constructor.
@@ -75,13 +74,14 @@ public class Player implements Runnable {
         // Added
         this.dealer = dealer;
         terminate = false;
-        score = 0;
         tokenCounter = 0;
-        inActions = new actionsQueue<Integer>();
-        toScore = null;
-        needToWait = true;
+        inActions = new actionsQueue<Long>();
         TCLock = new Object();
         freeze = false;
+        claim = new Claim(id, env.config.featureSize);
+        penalties = 0;
+        claims = 0;
+        claimNanos = 0;
     }
 
     /**
@@ -97,85 +97,97 @@ public class Player implements Runnable {
             // if can't place token yet, wait until dealer notifies you
             // if waited, clear actions queue
             if (table.getCanPlaceToken())
-                inActions.clearQueue();
+                clearActions();
 
-            Integer slot = inActions.take();
+            Long action = inActions.take();
+            if (action == null)
+                continue;
+            int slot = KeyTrace.slot(action);
+            long trace = KeyTrace.trace(action);
+            table.keyTrace.stage(trace, KeyTrace.Stage.TAKEN);
 
             // check if input is relevant at the moment
-            if (slot != null && table.getCard(slot) != null && (readTokenCounter() != env.config.featureSize || table.getToken(id, slot))){
+            if (table.getCard(slot) != null && (readTokenCounter() != env.config.featureSize || table.getToken(id, slot))){
 
                 // place or remove token
-                table.rw.playerLock();
-                boolean wasRemoved = table.removeToken(id, slot);
-                table.rw.playerUnlock();
-
-                if (wasRemoved){
+                if (table.ourRemoveToken(id, slot, trace)){
                     synchronized (TCLock) {tokenCounter--;}
                 }
                 else {
-                    if (table.ourPlaceToken(id, slot))
+                    if (table.ourPlaceToken(id, slot, trace))
                         synchronized (TCLock) {tokenCounter++;}
+                    else
+                        table.keyTrace.drop(trace, KeyTrace.Drop.IGNORED);
                 }
 
                 if (readTokenCounter() == env.config.featureSize){
 
                     freeze = true;
 
-                    // extract the set and create triple for the dealer
-                    int[][] set = table.returnSet(id);
-                    if (set != null){
-                        int[] setCards = set[0];
-                        int[] setSlots = set[1];
-                        Triple<Integer, int[], int[]> triple = new Triple<>(id, setCards, setSlots);
-                        dealer.pushToTestSet(triple);
+                    // fill the player's claim with the set and pass it to the dealer
+                    if (table.fillClaim(claim)){
+                        GameEvents.claimSubmitted(claim);
+                        table.keyTrace.stage(trace, KeyTrace.Stage.CLAIMED);
+                        dealer.pushToTestSet(claim);
 
                         // wait until dealer responds
-                        synchronized(dealer.locks[id]){
-                            while (needToWait && !terminate){
-                                try {
-                                    dealer.locks[id].wait();
-                                } catch (InterruptedException e) {}
-                            }
-                            needToWait = true;
-                        }
+                        Verdict verdict = claim.await();
+                        while (verdict == null && !terminate)
+                            verdict = claim.await();
+                        table.keyTrace.stage(trace, KeyTrace.Stage.ANSWERED);
 
                         // point or penalty and clear queue
                         // if set irrelevant do nothing
-                        if (toScore != null){
-                            if (toScore)
-                                point();
+                        if (verdict == Verdict.POINT || verdict == Verdict.PENALTY){
+                            claims++;
+                            claimNanos += System.nanoTime() - claim.timestamp();
+                            if (verdict == Verdict.POINT)
+                                point(claim.freezeUntil());
                             else 
-                                penalty();
-                            inActions.clearQueue();
+                                penalty(claim.freezeUntil());
+                            clearActions();
                         }
                     }
 
                     freeze = false;
                 }
             }
+            else
+                table.keyTrace.drop(trace, KeyTrace.Drop.IGNORED);
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Starts the AI (computer) player. Key presses are generated by the player's strategy on the shared
+     * computer players' scheduler, one scheduled task per key press, so no thread is dedicated to the AI.
+     * Key presses go through keyPressed, so they are dropped while frozen or when the queue is full.
      */
     private void createArtificialIntelligence() {
-        // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
-            env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
-            while (!terminate) {
+        strategy = AiStrategy.create(env, table, id);
+        env.logger.info("computer player " + (id + 1) + " uses the " + env.config.computerStrategy + " strategy.");
+        scheduleAi(strategy.nextDelayMillis());
+    }
 
-                Random random = new Random();
-                int slot = random.nextInt(12);
-                inActions.put(slot);
+    private void scheduleAi(long delayMillis) {
+        if (!terminate)
+            aiTask = AiScheduler.schedule(this::aiStep, delayMillis, env.config.computerThreads);
+    }
 
-            }
-            env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+    // the next key press is scheduled even if this one failed, so the player doesn't go silent
+    private void aiStep() {
+        if (terminate) return;
+        long delayMillis = env.config.computerKeyDelayMillis;
+        try {
+            int slot = strategy.nextSlot();
+            if (slot >= 0)
+                keyPressed(slot);
+            delayMillis = strategy.nextDelayMillis();
+        } catch (RuntimeException e) {
+            env.logger.log(Level.WARNING, "computer player " + (id + 1) + " failed to press a key", e);
+        } finally {
+            scheduleAi(delayMillis);
+        }
     }
 
     /**
@@ -183,19 +195,43 @@ public class Player implements Runnable {
      */
     public void terminate() {
         terminate = true;
-        if (!human) aiThread.interrupt();
+        ScheduledFuture<?> task = aiTask;
+        if (!human && task != null) task.cancel(false);
     }
 
     /**
      * This method is called when a key is pressed.
+     * Never blocks the caller (the swing thread or the network gateway), keys pressed while
+     * the actions queue is full are dropped.
      *
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
+        keyPressed(slot, System.nanoTime());
+    }
 
-        if (!freeze && table.inputManagerCPT())
-            inActions.put(slot);
+    /**
+     * This method is called when a key is pressed, with the time it was pressed (for tracing).
+     *
+     * @param slot         - the slot corresponding to the key pressed.
+     * @param pressedNanos - the time (System.nanoTime) the key was pressed.
+     */
+    public void keyPressed(int slot, long pressedNanos) {
+
+        long trace = table.keyTrace.begin(id, slot, pressedNanos);
+        if (freeze)
+            table.keyTrace.drop(trace, KeyTrace.Drop.FROZEN);
+        else if (!table.inputManagerCPT())
+            table.keyTrace.drop(trace, KeyTrace.Drop.CLOSED);
+        else if (!inActions.offer(KeyTrace.pack(trace, slot)))
+            table.keyTrace.drop(trace, KeyTrace.Drop.QUEUE_FULL);
+        else
+            table.keyTrace.stage(trace, KeyTrace.Stage.QUEUED);
+    }
 
+    // drops the keys that are waiting in the actions queue
+    private void clearActions() {
+        inActions.clearQueue(action -> table.keyTrace.drop(KeyTrace.trace(action), KeyTrace.Drop.CLEARED));
     }
 
     /**
@@ -205,38 +241,35 @@ public class Player implements Runnable {
      * @post - the player's score is updated in the ui.
      */
     public void point() { 
-        env.ui.setScore(id, ++score);
-
-        long endTime = System.currentTimeMillis() + env.config.pointFreezeMillis;
+        point(System.currentTimeMillis() + env.config.pointFreezeMillis);
+    }
 
-        boolean first = true;
-        try {
-            while(endTime > System.currentTimeMillis()){
-                env.ui.setFreeze(id, endTime - System.currentTimeMillis() + 1000);
-                if (first){
-                    Thread.sleep(10);
-                    first = false;
-                }
-                else
-                    Thread.sleep(1000);
-            }
-        } catch (InterruptedException e) {}
-        
-        env.ui.setFreeze(id, 0);
+    private void point(long endTime) {
+        env.ui.setScore(id, table.addScore(id));
+        freezeUntil(endTime, false);
     }
 
     /**
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
+        penalty(System.currentTimeMillis() + env.config.penaltyFreezeMillis);
+    }
 
-        long endTime = System.currentTimeMillis() + env.config.penaltyFreezeMillis;
-        
+    private void penalty(long endTime) {
+        penalties++;
+        freezeUntil(endTime, true);
+    }
+
+    // shows the remaining freeze time until the given time (in millis)
+    private void freezeUntil(long endTime, boolean penalty) {
+
+        Object event = GameEvents.beginFreeze();
         boolean first = true;
         try {
             while(endTime > System.currentTimeMillis()){
                 env.ui.setFreeze(id, endTime - System.currentTimeMillis() + 1000);
-                if(first){
+                if (first){
                     Thread.sleep(10);
                     first = false;
                 }
@@ -246,17 +279,28 @@ public class Player implements Runnable {
         } catch (InterruptedException e) {}
         
         env.ui.setFreeze(id, 0);
+        GameEvents.frozen(event, id, penalty);
     }
 
     public int score() {
-        return score;
+        return table.score(id);
     }
-    
-    //Added
-    public void toScore(Boolean toscore) {
-        toScore = toscore;
+
+    public int penalties() {
+        return penalties;
     }
 
+    // number of claims that got a verdict (point or penalty)
+    public int claims() {
+        return claims;
+    }
+
+    // total time spent waiting for the dealer's verdict on those claims
+    public long claimNanos() {
+        return claimNanos;
+    }
+    
+    //Added
     public void removeToken(int slot){
         if (table.removeToken(id, slot))
             synchronized (TCLock) {tokenCounter--;}
@@ -0,0 +1,27 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Presses random keys at a fixed rate (the original "very, very smart AI").
+ */
+class RandomStrategy implements AiStrategy {
+
+    private final Env env;
+
+    public RandomStrategy(Env env) {
+        this.env = env;
+    }
+
+    @Override
+    public int nextSlot() {
+        return ThreadLocalRandom.current().nextInt(env.config.tableSize);
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        return env.config.computerKeyDelayMillis;
+    }
+}
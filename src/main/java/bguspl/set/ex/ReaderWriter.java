@@ -1,6 +1,13 @@
 package bguspl.set.ex;
 
+import bguspl.set.Histogram;
+import bguspl.set.Metrics;
+
 public class ReaderWriter {
+
+    private static final Histogram playerWait = Metrics.histogram("lock.playerWaitNanos");
+    private static final Histogram dealerWait = Metrics.histogram("lock.dealerWaitNanos");
+
     private boolean activeDealer;
     private int activePlayers;
 
@@ -9,7 +16,15 @@ public class ReaderWriter {
         activeDealer = false;
     }
 
-    public synchronized void playerLock(){
+    public void playerLock(){
+        Object event = GameEvents.beginLockWait();
+        long start = System.nanoTime();
+        acquireAsPlayer();
+        playerWait.record(System.nanoTime() - start);
+        GameEvents.lockWaited(event, false);
+    }
+
+    private synchronized void acquireAsPlayer(){
         try{
             while(activeDealer){
                 this.wait();
@@ -23,7 +38,15 @@ public class ReaderWriter {
         notifyAll();
     }
 
-    public synchronized void dealerLock(){
+    public void dealerLock(){
+        Object event = GameEvents.beginLockWait();
+        long start = System.nanoTime();
+        acquireAsDealer();
+        dealerWait.record(System.nanoTime() - start);
+        GameEvents.lockWaited(event, true);
+    }
+
+    private synchronized void acquireAsDealer(){
         activeDealer = true;
         try{
             while(activePlayers > 0){
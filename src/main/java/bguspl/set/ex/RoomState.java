@@ -0,0 +1,197 @@
+package bguspl.set.ex;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The compact state of a game room: the cards on the table, the players' tokens and scores and the dealer's deck,
+ * stored off-heap in a single direct buffer (a few hundred bytes for the default game).
+ * Not synchronized, the table's ReaderWriter guards the table part and the dealer owns the deck part.
+ * <p>
+ * Layout:
+ * <pre>
+ * [deck count:i32][pad:i32]
+ * [tokens:i64 x words] per player   (bit s of the player's words is set iff the player has a token on slot s)
+ * [score:i32] per player
+ * [card:i16] per slot               (-1 if the slot is empty)
+ * [slot:i16] per card               (-1 if the card is not on the table)
+ * [card:i16] per deck position      (the first deck count positions are the deck)
+ * [position:i16] per card           (-1 if the card is not in the deck)
+ * </pre>
+ */
+class RoomState {
+
+    private static final int DECK_COUNT = 0;
+    private static final int TOKENS = 8;
+
+    private final int tableSize;
+    private final int deckSize;
+    private final int words;
+
+    private final int scoresOffset;
+    private final int slotsOffset;
+    private final int cardsOffset;
+    private final int deckOffset;
+    private final int positionsOffset;
+
+    private final ByteBuffer state;
+
+    public RoomState(int tableSize, int deckSize, int players) {
+        this.tableSize = tableSize;
+        this.deckSize = deckSize;
+        words = (tableSize + 63) / 64;
+
+        scoresOffset = TOKENS + players * words * 8;
+        slotsOffset = scoresOffset + players * 4;
+        cardsOffset = slotsOffset + tableSize * 2;
+        deckOffset = cardsOffset + deckSize * 2;
+        positionsOffset = deckOffset + deckSize * 2;
+
+        state = ByteBuffer.allocateDirect(positionsOffset + deckSize * 2);
+        for (int slot = 0; slot < tableSize; slot++)
+            state.putShort(slotsOffset + slot * 2, (short) -1);
+        for (int card = 0; card < deckSize; card++) {
+            state.putShort(cardsOffset + card * 2, (short) -1);
+            state.putShort(positionsOffset + card * 2, (short) -1);
+        }
+    }
+
+    /**
+     * @return - the size of the state in bytes.
+     */
+    public int bytes() {
+        return state.capacity();
+    }
+
+    // table
+
+    public int card(int slot) {
+        return state.getShort(slotsOffset + slot * 2);
+    }
+
+    public int slot(int card) {
+        return state.getShort(cardsOffset + card * 2);
+    }
+
+    public void place(int card, int slot) {
+        state.putShort(slotsOffset + slot * 2, (short) card);
+        state.putShort(cardsOffset + card * 2, (short) slot);
+    }
+
+    // returns the card that was removed, or -1 if the slot was empty
+    public int remove(int slot) {
+        int card = card(slot);
+        if (card >= 0) {
+            state.putShort(slotsOffset + slot * 2, (short) -1);
+            state.putShort(cardsOffset + card * 2, (short) -1);
+        }
+        return card;
+    }
+
+    public int countCards() {
+        int cards = 0;
+        for (int slot = 0; slot < tableSize; slot++)
+            if (card(slot) >= 0)
+                cards++;
+        return cards;
+    }
+
+    // tokens
+
+    public boolean token(int player, int slot) {
+        return (state.getLong(tokenWord(player, slot)) & (1L << slot)) != 0;
+    }
+
+    public void setToken(int player, int slot, boolean placed) {
+        int offset = tokenWord(player, slot);
+        long word = state.getLong(offset);
+        state.putLong(offset, placed ? word | (1L << slot) : word & ~(1L << slot));
+    }
+
+    private int tokenWord(int player, int slot) {
+        return TOKENS + (player * words + (slot >> 6)) * 8;
+    }
+
+    // scores
+
+    public int score(int player) {
+        return state.getInt(scoresOffset + player * 4);
+    }
+
+    public int addScore(int player) {
+        int score = score(player) + 1;
+        state.putInt(scoresOffset + player * 4, score);
+        return score;
+    }
+
+    // deck
+
+    public int deckCount() {
+        return state.getInt(DECK_COUNT);
+    }
+
+    public int deckCard(int index) {
+        return state.getShort(deckOffset + index * 2);
+    }
+
+    public boolean inDeck(int card) {
+        return state.getShort(positionsOffset + card * 2) >= 0;
+    }
+
+    public void pushDeck(int card) {
+        int count = deckCount();
+        setDeckCard(count, card);
+        state.putInt(DECK_COUNT, count + 1);
+    }
+
+    // removes and returns the card at the top of the deck
+    public int popDeck() {
+        int count = deckCount() - 1;
+        state.putInt(DECK_COUNT, count);
+        int card = deckCard(count);
+        state.putShort(positionsOffset + card * 2, (short) -1);
+        return card;
+    }
+
+    // removes the given card from the deck (in constant time, the top card takes its position)
+    public void takeDeck(int card) {
+        int position = state.getShort(positionsOffset + card * 2);
+        int count = deckCount() - 1;
+        setDeckCard(position, deckCard(count));
+        state.putInt(DECK_COUNT, count);
+        state.putShort(positionsOffset + card * 2, (short) -1);
+    }
+
+    public void shuffleDeck(Random random) {
+        for (int i = deckCount() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int card = deckCard(i);
+            setDeckCard(i, deckCard(j));
+            setDeckCard(j, card);
+        }
+    }
+
+    private void setDeckCard(int position, int card) {
+        state.putShort(deckOffset + position * 2, (short) card);
+        state.putShort(positionsOffset + card * 2, (short) position);
+    }
+
+    /**
+     * @return - a read-only list view of the deck (no copy is made, the view follows the deck).
+     */
+    public List<Integer> deckView() {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return deckCard(index);
+            }
+
+            @Override
+            public int size() {
+                return deckCount();
+            }
+        };
+    }
+}
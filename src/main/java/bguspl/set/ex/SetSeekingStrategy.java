@@ -0,0 +1,87 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks for a legal set in a snapshot of the table and presses its slots (after removing stray tokens).
+ * The plan is dropped as soon as one of its cards is no longer in its slot.
+ */
+class SetSeekingStrategy implements AiStrategy {
+
+    protected final Env env;
+    private final Table table;
+    private final int id;
+
+    // the planned presses: {slot, card} (card -1 for removing a stray token)
+    private final ArrayDeque<int[]> plan;
+
+    public SetSeekingStrategy(Env env, Table table, int id) {
+        this.env = env;
+        this.table = table;
+        this.id = id;
+        plan = new ArrayDeque<>();
+    }
+
+    /**
+     * @return - true iff the next press starts a new plan (i.e. the player is looking for a set now).
+     */
+    protected boolean searching() {
+        return plan.isEmpty();
+    }
+
+    @Override
+    public int nextSlot() {
+
+        // drop the plan if the table changed under it
+        for (int[] press : plan) {
+            Integer card = table.getCard(press[0]);
+            if (press[1] >= 0 && (card == null || card != press[1])) {
+                plan.clear();
+                break;
+            }
+        }
+
+        if (plan.isEmpty() && !makePlan())
+            return -1;
+
+        return plan.pollFirst()[0];
+    }
+
+    private boolean makePlan() {
+        Integer[] slots = table.snapshot();
+        List<Integer> cards = new ArrayList<>(slots.length);
+        for (Integer card : slots)
+            if (card != null)
+                cards.add(card);
+
+        List<int[]> sets = env.util.findSets(cards, 1);
+        if (sets.isEmpty())
+            return false;
+
+        // first take back the tokens that are not part of the set, then place the missing ones
+        int[] set = sets.get(0);
+        boolean[] inSet = new boolean[slots.length];
+        for (int card : set)
+            for (int slot = 0; slot < slots.length; slot++)
+                if (slots[slot] != null && slots[slot] == card)
+                    inSet[slot] = true;
+
+        for (int slot = 0; slot < slots.length; slot++)
+            if (!inSet[slot] && table.getToken(id, slot))
+                plan.addLast(new int[]{slot, -1});
+        for (int slot = 0; slot < slots.length; slot++)
+            if (inSet[slot] && !table.getToken(id, slot))
+                plan.addLast(new int[]{slot, slots[slot]});
+
+        return !plan.isEmpty();
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        return env.config.computerKeyDelayMillis;
+    }
+}
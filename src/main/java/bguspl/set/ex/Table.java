@@ -2,15 +2,15 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
+ * The cards, tokens and scores are kept in the room's compact off-heap state.
  *
- * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv state.card(x) == y iff state.slot(y) == x
  */
 public class Table {
 
@@ -20,20 +20,20 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * The room's state: mapping between slots and cards (both ways), the players' tokens and scores, and the
+     * dealer's deck.
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
-
-    /**
-     * Mapping between a card and the slot it is in (null if none).
-     */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final RoomState state;
 
     // Added
-    private final boolean[][] tokens;
     protected ReaderWriter rw;
     private boolean canPlaceTokens;
     private Object CPTlock;
+    private final UiEventBuffer uiEvents;
+    private volatile long epoch; // incremented whenever cards are placed or removed
+    private long shownAt; // when the ui is done animating the cards placed and removed so far (dealer only)
+    protected final KeyTrace keyTrace;
+    private final HintEngine hintEngine;
 
     /**
      * Constructor for testing.
@@ -45,18 +45,18 @@ public class Table {
     public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
 
         this.env = env;
-        this.slotToCard = slotToCard;
-        this.cardToSlot = cardToSlot;
+        this.state = new RoomState(slotToCard.length, cardToSlot.length, env.config.players);
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] != null)
+                state.place(slotToCard[slot], slot);
 
         // Added
-        tokens = new boolean[env.config.players][env.config.tableSize];
-        for (int i = 0; i < tokens.length; i++)
-            for (int j = 0; j < tokens[i].length; j++)
-                tokens[i][j] = false;
-        
         rw = new ReaderWriter();
         canPlaceTokens = false;
         CPTlock = new Object();
+        uiEvents = new UiEventBuffer();
+        keyTrace = new KeyTrace(env.config.keyTraceBuffer);
+        hintEngine = new HintEngine(env, this, System.out);
     }
     
 
@@ -72,22 +72,19 @@ public class Table {
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
+     * The sets are found and printed in the background (once per table epoch), so the caller never waits.
      */
     public void hints() {
 
         // Added
-        rw.dealerLock();
-
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+        hintEngine.request();
+    }
 
-        // Added
-        rw.dealerUnlock();
+    /**
+     * @return - the hints of the current table if they were already computed, null otherwise.
+     */
+    public String currentHints() {
+        return hintEngine.current();
     }
 
     /**
@@ -96,11 +93,7 @@ public class Table {
      * @return - the number of cards on the table.
      */
     public int countCards() {
-        int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
-                ++cards;
-        return cards;
+        return state.countCards();
     }
 
     /**
@@ -116,11 +109,13 @@ public class Table {
         } catch (InterruptedException ignored) {}
 
         rw.dealerLock();
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        state.place(card, slot);
+        epoch++;
+        uiEvents.add(() -> env.ui.placeCard(card, slot));
         rw.dealerUnlock();
 
-        env.ui.placeCard(card, slot);
+        publishUiEvents();
+        GameEvents.cardPlaced(slot, card);
     }
 
     /**
@@ -133,14 +128,89 @@ public class Table {
         } catch (InterruptedException ignored) {}
 
         rw.dealerLock();
-        Integer card = slotToCard[slot];
-        if(card != null){
-            cardToSlot[card] = null;
-            slotToCard[slot] = null;
-            env.ui.removeCard(slot);
+        int card = state.remove(slot);
+        if(card >= 0){
+            epoch++;
+            uiEvents.add(() -> env.ui.removeCard(slot));
         }
         rw.dealerUnlock();
 
+        publishUiEvents();
+        if (card >= 0)
+            GameEvents.cardRemoved(slot, card);
+    }
+
+    /**
+     * Places several cards on the table at once (without the table delay, the ui animates the dealing).
+     * @param cards - the card ids to place.
+     * @param slots - the slots in which the cards should be placed (respectively).
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        if (slots.length == 0)
+            return;
+
+        rw.dealerLock();
+        for (int i = 0; i < slots.length; i++)
+            state.place(cards[i], slots[i]);
+        epoch++;
+        uiEvents.add(() -> env.ui.placeCards(cards, slots));
+        rw.dealerUnlock();
+
+        publishUiEvents();
+        animated(slots.length);
+        for (int i = 0; i < slots.length; i++)
+            GameEvents.cardPlaced(slots[i], cards[i]);
+    }
+
+    /**
+     * Removes the cards from several grid slots at once (without the table delay, the ui animates the removal).
+     * @param slots - the slots from which to remove the cards.
+     */
+    public void removeCards(int[] slots) {
+
+        int[] removed = new int[slots.length];
+        int[] removedCards = new int[slots.length];
+        int count = 0;
+
+        rw.dealerLock();
+        for (int slot : slots){
+            int card = state.remove(slot);
+            if (card >= 0){
+                removedCards[count] = card;
+                removed[count++] = slot;
+            }
+        }
+        if (count > 0){
+            epoch++;
+            int[] removedSlots = Arrays.copyOf(removed, count);
+            uiEvents.add(() -> env.ui.removeCards(removedSlots));
+        }
+        rw.dealerUnlock();
+
+        publishUiEvents();
+        animated(count);
+        for (int i = 0; i < count; i++)
+            GameEvents.cardRemoved(removed[i], removedCards[i]);
+    }
+
+    // the ui animates the slots one after the other, tableDelayMillis apart, after the slots before them
+    private void animated(int slots) {
+        shownAt = Math.max(System.currentTimeMillis(), shownAt) + slots * env.config.tableDelayMillis;
+    }
+
+    /**
+     * Waits until the ui has shown all the cards placed and removed so far (called by the dealer before it lets the
+     * players place tokens, so no time of the turn is spent on the animation).
+     */
+    public void awaitShown() {
+        long left = shownAt - System.currentTimeMillis();
+        if (left > 0) {
+            try {
+                Thread.sleep(left);
+            } catch (InterruptedException ignored) {}
+        }
     }
 
     /**
@@ -150,8 +220,10 @@ public class Table {
      */
     public void placeToken(int player, int slot) {
         
-        tokens[player][slot] = true;
-        env.ui.placeToken(player, slot);
+        // Needs to be synched from the outside, the ui is updated by publishUiEvents
+        state.setToken(player, slot, true);
+        uiEvents.add(() -> env.ui.placeToken(player, slot));
+        GameEvents.tokenPlaced(player, slot);
     }
 
     /**
@@ -162,36 +234,40 @@ public class Table {
      */
     public boolean removeToken(int player, int slot) { 
         
-        // Needs to be synched from the outside
-        boolean output = tokens[player][slot];
+        // Needs to be synched from the outside, the ui is updated by publishUiEvents
+        boolean output = state.token(player, slot);
         if (output){
-            tokens[player][slot] = false;
-            env.ui.removeToken(player, slot);
+            state.setToken(player, slot, false);
+            uiEvents.add(() -> env.ui.removeToken(player, slot));
+            GameEvents.tokenRemoved(player, slot);
         }
         return output;
     }
 
-    //this method returns a 2-D array which the first array is the cards, and the second one is the slots each card
-    //is the corresponding slot, for a specific player.
-    public int[][] returnSet(int player){
+    // fills the claim with the cards the player has tokens on and the slots of these cards (respectively)
+    // returns false iff one of the tokens is on an empty slot
+    public boolean fillClaim(Claim claim){
         int j = 0;
-        int[][] output = new int[2][env.config.featureSize];
+        boolean output = true;
 
         rw.playerLock();
-        for (int i = 0; i < tokens[player].length && output != null; i++){
-            if (tokens[player][i]){
-                if (slotToCard[i] == null)
-                    output = null;
+        for (int i = 0; i < env.config.tableSize && output && j < claim.cards.length; i++){
+            if (state.token(claim.player, i)){
+                int card = state.card(i);
+                if (card < 0)
+                    output = false;
                 else{
-                    output[0][j] = slotToCard[i];
-                    output[1][j] = i;
+                    claim.cards[j] = card;
+                    claim.slots[j] = i;
                     j++;
                 }
             }
         }
+        if (output)
+            claim.reset(epoch);
         rw.playerUnlock();
 
-        return output;
+        return output && j == claim.cards.length;
     }
 
     // checks if the given set still exists in the corresponding slots
@@ -200,51 +276,115 @@ public class Table {
         boolean output = true;
 
         rw.dealerLock();
-        for (int i = 0; i < slots.length && output; i++){
-            if (slotToCard[slots[i]] == null)
-                output = false;
-            else
-                output = (cards[i] == slotToCard[slots[i]]);
-        }
+        for (int i = 0; i < slots.length && output; i++)
+            output = (cards[i] == state.card(slots[i]));
         rw.dealerUnlock();
 
         return output;
     }
 
+    // checks (as a reader) if the given set exists in the corresponding slots,
+    // returns the epoch in which it was checked or -1 if the set is not on the table
+    public long relevantEpoch(int[] cards, int[] slots){
+
+        boolean output = true;
+
+        rw.playerLock();
+        long checked = epoch;
+        for (int i = 0; i < slots.length && output; i++)
+            output = (cards[i] == state.card(slots[i]));
+        rw.playerUnlock();
+
+        return output ? checked : -1;
+    }
+
     // adds the cards that are on the table to dealer's deck
     public void addToDeck(Dealer dealer){
 
         rw.dealerLock();
-        for (int i = 0; i < slotToCard.length; i++){
-            if (slotToCard[i] != null)
-                dealer.addCard(slotToCard[i]);
+        for (int i = 0; i < env.config.tableSize; i++){
+            if (state.card(i) >= 0)
+                dealer.addCard(state.card(i));
         }
         rw.dealerUnlock();
     }
 
     public Integer getCard(int slot){
         rw.playerLock();
-        Integer output = slotToCard[slot];
+        int card = state.card(slot);
+        rw.playerUnlock();
+        return card < 0 ? null : card;
+    }
+
+    // the number of card changes so far (the cards on the table may only change while the epoch changes)
+    public long epoch(){
+        return epoch;
+    }
+
+    // fills the array with the card in each slot (-1 if none), returns the epoch of this table state
+    public long snapshot(int[] slotToCard){
+        rw.playerLock();
+        long output = epoch;
+        for (int i = 0; i < slotToCard.length; i++)
+            slotToCard[i] = state.card(i);
+        rw.playerUnlock();
+        return output;
+    }
+
+    // returns a copy of the slot to card mapping (for the computer players)
+    public Integer[] snapshot(){
+        Integer[] output = new Integer[env.config.tableSize];
+        rw.playerLock();
+        for (int i = 0; i < output.length; i++){
+            int card = state.card(i);
+            if (card >= 0)
+                output[i] = card;
+        }
         rw.playerUnlock();
         return output;
     }
 
     public boolean getToken(int id, int slot){
         rw.playerLock();
-        boolean output =  tokens[id][slot];
+        boolean output = state.token(id, slot);
         rw.playerUnlock();
         return output;
     }
 
-    public boolean ourPlaceToken(int player, int slot){
+    // places the token for a traced key press
+    public boolean ourPlaceToken(int player, int slot, long trace){
         rw.playerLock();
-        boolean output = slotToCard[slot] != null;
-        if (output)
+        boolean output = state.card(slot) >= 0;
+        if (output){
             placeToken(player, slot);
+            keyTrace.stage(trace, KeyTrace.Stage.APPLIED);
+            uiEvents.add(() -> keyTrace.stage(trace, KeyTrace.Stage.DISPLAYED));
+        }
         rw.playerUnlock();
+
+        publishUiEvents();
         return output;
     }
 
+    // removes the token for a traced key press, returns true iff the player had a token on the slot
+    public boolean ourRemoveToken(int player, int slot, long trace){
+        rw.playerLock();
+        boolean output = removeToken(player, slot);
+        if (output){
+            keyTrace.stage(trace, KeyTrace.Stage.APPLIED);
+            uiEvents.add(() -> keyTrace.stage(trace, KeyTrace.Stage.DISPLAYED));
+        }
+        rw.playerUnlock();
+
+        publishUiEvents();
+        return output;
+    }
+
+    // publishes the ui updates of the table mutations, must be called after releasing the table lock
+    protected void publishUiEvents(){
+        uiEvents.publish();
+    }
+
     // puts players' threads in wait while dealer doesn't allow tokens to be placed
     // return true iff the player was put in wait
     public boolean getCanPlaceToken(){
@@ -273,9 +413,28 @@ public class Table {
     // check if there is a legal set on the table right now
     public boolean doSetExists(){
         rw.dealerLock();
-        List<Integer> cards = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        List<Integer> cards = cardsOnTable();
         rw.dealerUnlock();
-        return !env.util.findSets(cards, Integer.MAX_VALUE).isEmpty();
+        return env.util.anySet(cards);
+    }
+
+    // the cards that are on the table (must be called while holding the table lock)
+    private List<Integer> cardsOnTable(){
+        List<Integer> cards = new ArrayList<>(env.config.tableSize);
+        for (int i = 0; i < env.config.tableSize; i++)
+            if (state.card(i) >= 0)
+                cards.add(state.card(i));
+        return cards;
+    }
+
+    // the player's score
+    public int score(int player){
+        return state.score(player);
+    }
+
+    // adds a point to the player and returns the new score (only the player itself changes its score)
+    public int addScore(int player){
+        return state.addScore(player);
     }
 
     // checks the status of 'canPlaceTokens'
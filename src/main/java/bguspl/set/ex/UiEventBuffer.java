@@ -0,0 +1,40 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects the ui updates caused by table mutations while the table is locked, so that they can be
+ * published (in the same order) after the lock is released.
+ */
+class UiEventBuffer {
+
+    private final ConcurrentLinkedQueue<Runnable> events;
+    private final ReentrantLock publishing;
+
+    public UiEventBuffer() {
+        events = new ConcurrentLinkedQueue<>();
+        publishing = new ReentrantLock();
+    }
+
+    // called while holding the table lock, so the order of the events is the order of the mutations
+    public void add(Runnable event) {
+        events.add(event);
+    }
+
+    // publishes all pending events (only one thread publishes at a time, if another thread is already
+    // publishing it will publish our events too)
+    public void publish() {
+        while (!events.isEmpty()) {
+            if (!publishing.tryLock())
+                return;
+            try {
+                Runnable event;
+                while ((event = events.poll()) != null)
+                    event.run();
+            } finally {
+                publishing.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package bguspl.set.ex;
+
+/**
+ * The dealer's answer to a claim.
+ */
+enum Verdict {
+    POINT,      // a legal set, the cards were removed
+    PENALTY,    // not a legal set
+    IRRELEVANT  // the cards were no longer in their slots, nothing happens
+}
@@ -1,5 +1,6 @@
 package bguspl.set.ex;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 class actionsQueue<E> {
 
@@ -24,6 +25,16 @@ class actionsQueue<E> {
         }
     }
 
+    // adds the slot only if there is room, never waits
+    // returns true iff the slot was added
+    public synchronized boolean offer(E slot){
+        if (actions.size() >= MAX)
+            return false;
+        actions.add(slot);
+        this.notifyAll();
+        return true;
+    }
+
     public synchronized E take() {
         try{
             while(actions.size() == 0){
@@ -46,4 +57,12 @@ class actionsQueue<E> {
         }
         this.notifyAll();
     }
+
+    // removes all the actions, passing each of them to the consumer
+    public synchronized void clearQueue(Consumer<E> removed){
+        while(actions.size() != 0){
+            removed.accept(actions.remove(0));
+        }
+        this.notifyAll();
+    }
 }
\ No newline at end of file
@@ -1,24 +1,47 @@
 package bguspl.set.ex;
+import bguspl.set.Histogram;
+import bguspl.set.Metrics;
+
 import java.util.Vector;
 
 class setsQueue {
 
-    private Vector<Triple<Integer, int[], int[]>> sets;
+    private static final Histogram depth = Metrics.histogram("claims.queueDepth");
+
+    private Vector<Claim> sets;
 
     public setsQueue() {
         sets = new Vector<>();
     }
 
-    public synchronized void put(Triple<Integer, int[], int[]> set){
-        sets.add(set);
+    // keeps the claims in timestamp order (a claim is usually the latest, so search from the end)
+    public synchronized void put(Claim set){
+        int i = sets.size();
+        while (i > 0 && sets.get(i - 1).timestamp() > set.timestamp())
+            i--;
+        sets.add(i, set);
+        depth.record(sets.size());
+    }
+
+    // takes the first claim only if it was already verified
+    public synchronized Claim takeVerified() {
+        if (sets.size() == 0 || !sets.get(0).isVerified()){
+            return null;
+        }
+
+        return sets.remove(0);
+    }
+
+    public synchronized boolean isFirstVerified() {
+        return sets.size() > 0 && sets.get(0).isVerified();
     }
 
-    public synchronized Triple<Integer, int[], int[]> take() {
+    public synchronized Claim take() {
         if (sets.size() == 0){
             return null;
         }
 
-        Triple<Integer, int[], int[]> set = sets.get(0);
+        Claim set = sets.get(0);
         sets.remove(0);
         return set;
     }
@@ -0,0 +1,226 @@
+package bguspl.set.ex;
+
+import jdk.jfr.*;
+
+/**
+ * The game's events as Java Flight Recorder events (Java 17+, loaded by GameEvents). An event is only allocated
+ * when its type is enabled in the running recordings.
+ */
+final class JfrGameEvents implements GameEvents.Recorder {
+
+    @Name("bguspl.set.CardPlaced")
+    @Label("Card Placed")
+    @Category({"Set Game", "Table"})
+    static class CardPlaced extends Event {
+        @Label("Slot") int slot;
+        @Label("Card") int card;
+    }
+
+    @Name("bguspl.set.CardRemoved")
+    @Label("Card Removed")
+    @Category({"Set Game", "Table"})
+    static class CardRemoved extends Event {
+        @Label("Slot") int slot;
+        @Label("Card") int card;
+    }
+
+    @Name("bguspl.set.TokenPlaced")
+    @Label("Token Placed")
+    @Category({"Set Game", "Table"})
+    static class TokenPlaced extends Event {
+        @Label("Player") int player;
+        @Label("Slot") int slot;
+    }
+
+    @Name("bguspl.set.TokenRemoved")
+    @Label("Token Removed")
+    @Category({"Set Game", "Table"})
+    static class TokenRemoved extends Event {
+        @Label("Player") int player;
+        @Label("Slot") int slot;
+    }
+
+    @Name("bguspl.set.ClaimSubmitted")
+    @Label("Claim Submitted")
+    @Category({"Set Game", "Claims"})
+    static class ClaimSubmitted extends Event {
+        @Label("Player") int player;
+        @Label("Table Epoch") long epoch;
+    }
+
+    @Name("bguspl.set.ClaimVerified")
+    @Label("Claim Verified")
+    @Description("A claim that was a legal set and scored a point")
+    @Category({"Set Game", "Claims"})
+    static class ClaimVerified extends Event {
+        @Label("Player") int player;
+        @Label("Latency") @Timespan long latency;
+    }
+
+    @Name("bguspl.set.ClaimRejected")
+    @Label("Claim Rejected")
+    @Description("A claim that was not a legal set (penalty) or whose cards left the table (irrelevant)")
+    @Category({"Set Game", "Claims"})
+    static class ClaimRejected extends Event {
+        @Label("Player") int player;
+        @Label("Verdict") String verdict;
+        @Label("Latency") @Timespan long latency;
+    }
+
+    @Name("bguspl.set.Freeze")
+    @Label("Player Frozen")
+    @Category({"Set Game", "Players"})
+    static class Freeze extends Event {
+        @Label("Player") int player;
+        @Label("Penalty") boolean penalty;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Category({"Set Game", "Table"})
+    static class Reshuffle extends Event {
+        @Label("Cards Returned") int cards;
+    }
+
+    @Name("bguspl.set.LockWait")
+    @Label("Table Lock Wait")
+    @Category({"Set Game", "Contention"})
+    @Threshold("1 ms")
+    static class LockWait extends Event {
+        @Label("Dealer") boolean dealer;
+    }
+
+    private static final EventType CARD_PLACED = EventType.getEventType(CardPlaced.class);
+    private static final EventType CARD_REMOVED = EventType.getEventType(CardRemoved.class);
+    private static final EventType TOKEN_PLACED = EventType.getEventType(TokenPlaced.class);
+    private static final EventType TOKEN_REMOVED = EventType.getEventType(TokenRemoved.class);
+    private static final EventType CLAIM_SUBMITTED = EventType.getEventType(ClaimSubmitted.class);
+    private static final EventType CLAIM_VERIFIED = EventType.getEventType(ClaimVerified.class);
+    private static final EventType CLAIM_REJECTED = EventType.getEventType(ClaimRejected.class);
+    private static final EventType FREEZE = EventType.getEventType(Freeze.class);
+    private static final EventType RESHUFFLE = EventType.getEventType(Reshuffle.class);
+    private static final EventType LOCK_WAIT = EventType.getEventType(LockWait.class);
+
+    @Override
+    public void cardPlaced(int slot, int card) {
+        if (CARD_PLACED.isEnabled()) {
+            CardPlaced event = new CardPlaced();
+            event.slot = slot;
+            event.card = card;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void cardRemoved(int slot, int card) {
+        if (CARD_REMOVED.isEnabled()) {
+            CardRemoved event = new CardRemoved();
+            event.slot = slot;
+            event.card = card;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void tokenPlaced(int player, int slot) {
+        if (TOKEN_PLACED.isEnabled()) {
+            TokenPlaced event = new TokenPlaced();
+            event.player = player;
+            event.slot = slot;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void tokenRemoved(int player, int slot) {
+        if (TOKEN_REMOVED.isEnabled()) {
+            TokenRemoved event = new TokenRemoved();
+            event.player = player;
+            event.slot = slot;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void claimSubmitted(int player, long epoch) {
+        if (CLAIM_SUBMITTED.isEnabled()) {
+            ClaimSubmitted event = new ClaimSubmitted();
+            event.player = player;
+            event.epoch = epoch;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void claimAnswered(int player, Verdict verdict, long latencyNanos) {
+        if (verdict == Verdict.POINT) {
+            if (CLAIM_VERIFIED.isEnabled()) {
+                ClaimVerified event = new ClaimVerified();
+                event.player = player;
+                event.latency = latencyNanos;
+                event.commit();
+            }
+        } else if (CLAIM_REJECTED.isEnabled()) {
+            ClaimRejected event = new ClaimRejected();
+            event.player = player;
+            event.verdict = verdict.name();
+            event.latency = latencyNanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginFreeze() {
+        if (!FREEZE.isEnabled()) return null;
+        Freeze event = new Freeze();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void frozen(Object handle, int player, boolean penalty) {
+        Freeze event = (Freeze) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = player;
+            event.penalty = penalty;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginReshuffle() {
+        if (!RESHUFFLE.isEnabled()) return null;
+        Reshuffle event = new Reshuffle();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void reshuffled(Object handle, int cards) {
+        Reshuffle event = (Reshuffle) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.cards = cards;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginLockWait() {
+        if (!LOCK_WAIT.isEnabled()) return null;
+        LockWait event = new LockWait();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void lockWaited(Object handle, boolean dealer) {
+        LockWait event = (LockWait) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.dealer = dealer;
+            event.commit();
+        }
+    }
+}
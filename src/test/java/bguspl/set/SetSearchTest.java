@@ -0,0 +1,141 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the set rules and every set search back end (the sequential, batch and parallel searches, with and without
+ * the completion tables) against the original per-feature rule and brute force.
+ */
+class SetSearchTest {
+
+    private static Config config(int featureCount, int featureSize, String rule) {
+        Properties properties = new Properties();
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("FeatureSize", Integer.toString(featureSize));
+        properties.setProperty("SetRule", rule);
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("RemotePlayers", "0");
+        return new Config(Logger.getLogger("SetSearchTest"), properties);
+    }
+
+    // the legality check of the original game: every feature is all the same or all different
+    private static boolean classicSet(Config config, int[] cards) {
+        for (int f = 0, power = 1; f < config.featureCount; f++, power *= config.featureSize) {
+            boolean same = true, different = true;
+            for (int i = 0; i < cards.length; i++)
+                for (int j = i + 1; j < cards.length; j++) {
+                    boolean equal = cards[i] / power % config.featureSize == cards[j] / power % config.featureSize;
+                    same &= equal;
+                    different &= !equal;
+                }
+            if (same == different) return false;
+        }
+        return true;
+    }
+
+    // the number of sets in the cards, by testing every combination of three cards
+    private static int bruteForceCount(Config config, List<Integer> cards) {
+        int count = 0;
+        for (int a = 0; a < cards.size(); a++)
+            for (int b = a + 1; b < cards.size(); b++)
+                for (int c = b + 1; c < cards.size(); c++)
+                    if (classicSet(config, new int[]{cards.get(a), cards.get(b), cards.get(c)}))
+                        count++;
+        return count;
+    }
+
+    @Test
+    void classicRuleMatchesTheOriginalRuleOnEveryTriple() {
+        Config config = config(4, 3, "classic");
+        SetRuleTable table = new SetRuleTable(SetRule.CLASSIC, config);
+        Util util = new UtilImpl(config);
+        int sets = 0;
+        for (int a = 0; a < config.deckSize; a++)
+            for (int b = a + 1; b < config.deckSize; b++)
+                for (int c = b + 1; c < config.deckSize; c++) {
+                    int[] cards = {a, b, c};
+                    boolean expected = classicSet(config, cards);
+                    assertEquals(expected, table.test(cards), Arrays.toString(cards));
+                    assertEquals(expected, util.testSet(cards), Arrays.toString(cards));
+                    if (expected) sets++;
+                }
+        assertEquals(1080, sets);
+    }
+
+    @Test
+    void completionIsTheSmallestOtherCardThatFormsASet() {
+        Random random = new Random(1);
+        for (String[] variant : new String[][]{{"4", "3", "classic"}, {"4", "3", "onerepeat"}, {"3", "4", "summod"}, {"3", "4", "onerepeat"}}) {
+            Config config = config(Integer.parseInt(variant[0]), Integer.parseInt(variant[1]), variant[2]);
+            Util util = new UtilImpl(config);
+            for (int attempt = 0; attempt < 2000; attempt++) {
+                int[] cards = random.ints(0, config.deckSize).distinct().limit(config.featureSize - 1).toArray();
+                int expected = -1;
+                for (int card = 0; card < config.deckSize && expected < 0; card++) {
+                    int[] set = Arrays.copyOf(cards, cards.length + 1);
+                    set[cards.length] = card;
+                    if (Arrays.stream(cards).noneMatch(c -> c == set[cards.length]) && util.testSet(set))
+                        expected = card;
+                }
+                assertEquals(expected, util.completeSet(cards), Arrays.toString(variant) + " " + Arrays.toString(cards));
+            }
+        }
+    }
+
+    @Test
+    void everySearchFindsTheSameSets(@TempDir Path directory) throws IOException {
+        Config config = config(6, 3, "classic");
+        Path file = directory.resolve("tables.bin");
+        CompletionTables.generate(config.featureSize, config.featureCount, file);
+        Util[] utils = {new UtilImpl(config), new UtilImpl(config, CompletionTables.map(file))};
+
+        List<Integer> deck = new ArrayList<>();
+        for (int card = 0; card < config.deckSize; card++)
+            deck.add(card);
+        Collections.shuffle(deck, new Random(2));
+
+        for (int i = 0; i + 1 < deck.size(); i += 2) {
+            int[] pair = {deck.get(i), deck.get(i + 1)};
+            assertEquals(utils[0].completeSet(pair), utils[1].completeSet(pair), Arrays.toString(pair));
+        }
+
+        // below the batch search, batch searched, and searched in parallel
+        for (int size : new int[]{12, 60, 300}) {
+            List<Integer> cards = deck.subList(0, size);
+            int expected = bruteForceCount(config, cards);
+            for (Util util : utils) {
+                List<int[]> sets = util.findSets(cards, Integer.MAX_VALUE);
+                assertEquals(expected, sets.size(), "findSets of " + size);
+                assertTrue(sets.stream().allMatch(set -> classicSet(config, set)), "findSets of " + size);
+                assertEquals(expected, util.countSets(cards), "countSets of " + size);
+                assertEquals(expected, util.streamSets(cards).count(), "streamSets of " + size);
+                assertEquals(expected, util.streamSets(cards).parallel().distinct().count(), "parallel streamSets of " + size);
+                assertEquals(expected, util.visitSets(cards, set -> true), "visitSets of " + size);
+                assertEquals(expected > 0, util.anySet(cards), "anySet of " + size);
+                assertEquals(Math.min(expected, 5), util.findSets(cards, 5).size(), "findSets(5) of " + size);
+            }
+
+            // the same sets, in the same order, with and without the tables
+            List<int[]> plain = utils[0].findSets(cards, Integer.MAX_VALUE);
+            List<int[]> tabled = utils[1].findSets(cards, Integer.MAX_VALUE);
+            for (int i = 0; i < plain.size(); i++)
+                assertArrayEquals(plain.get(i), tabled.get(i), "set " + i + " of " + size);
+        }
+    }
+}